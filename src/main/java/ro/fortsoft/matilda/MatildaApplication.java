@@ -17,38 +17,78 @@ package ro.fortsoft.matilda;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.dao.IciqlJobStateDao;
+import ro.fortsoft.matilda.domain.ArchiveCache;
+import ro.fortsoft.matilda.domain.ArchiveExports;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.ContentAddressedStorage;
 import ro.fortsoft.matilda.domain.Customer;
 import ro.fortsoft.matilda.domain.Document;
 import ro.fortsoft.matilda.domain.FileSystemStorage;
+import ro.fortsoft.matilda.domain.JobState;
+import ro.fortsoft.matilda.domain.PageRequest;
+import ro.fortsoft.matilda.domain.ResumableUploads;
 import ro.fortsoft.matilda.domain.Storage;
+import ro.fortsoft.matilda.domain.UploadResult;
+import ro.fortsoft.matilda.job.JobScheduler;
+import ro.fortsoft.matilda.job.Trigger;
+import ro.fortsoft.matilda.service.CachingEntityService;
 import ro.fortsoft.matilda.service.CompanyService;
 import ro.fortsoft.matilda.service.CustomerService;
 import ro.fortsoft.matilda.service.DocumentService;
 import ro.fortsoft.matilda.service.ServiceFactory;
 import ro.fortsoft.matilda.service.UserService;
+import ro.fortsoft.matilda.util.ByteRange;
 import ro.fortsoft.matilda.util.DbUtils;
-import ro.fortsoft.matilda.util.ZipUtils;
+import ro.fortsoft.matilda.util.FileUtils;
+import ro.fortsoft.matilda.util.NetUtils;
+import ro.fortsoft.matilda.util.StripedLocks;
+import ro.fortsoft.matilda.util.ZipArchiver;
 import ro.fortsoft.matilda.web.AdminRoutes;
 import ro.fortsoft.matilda.web.ExtendedPebbleTemplateEngine;
+import ro.fortsoft.matilda.web.JacksonJsonEngine;
+import ro.fortsoft.matilda.web.QuotaRequestResponseFactory;
 import ro.fortsoft.matilda.web.Routes;
 import ro.pippo.core.Application;
 import ro.pippo.core.FileItem;
+import ro.pippo.core.HttpConstants;
 import ro.pippo.core.PippoRuntimeException;
 import ro.pippo.core.RedirectHandler;
+import ro.pippo.core.Request;
+import ro.pippo.core.RequestResponseFactory;
+import ro.pippo.core.Response;
 import ro.pippo.core.route.RouteContext;
 import ro.pippo.core.util.PathRegexBuilder;
+import ro.pippo.core.util.StringUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
  * A simple Pippo application.
@@ -65,14 +105,37 @@ public class MatildaApplication extends Application {
     public static final String COMPANY = "company";
     public static final String COMPANY_ID = "companyId";
     public static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("MM-yyyy");
+    public static final String STORAGE_USAGE_JOB = "storage-usage";
+    public static final String RESUMABLE_UPLOADS_JOB = "resumable-uploads";
+    public static final String ARCHIVE_EXPORTS_JOB = "archive-exports";
 
     private static final String UPLOAD_LOCATION = "uploads";
+    private static final String ARCHIVE_CACHE_LOCATION = "archives";
+    private static final String ARCHIVE_EXPORT_LOCATION = "exports";
+    private static final String RESUMABLE_UPLOAD_LOCATION = UPLOAD_LOCATION + "/resumable";
+    private static final String ZIP_CONTENT_TYPE = "application/zip";
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+    // the request local with the customer and the company of the request
+    private static final String PRINCIPAL = "_principal";
+    private static final String MAINTENANCE_POOL = "maintenance";
+    private static final String EXPORT_POOL = "export";
+    private static final String EXPORT_JOB_PREFIX = "export-";
 
     private CustomerService customerService;
     private CompanyService companyService;
     private UserService userService;
     private DocumentService documentService;
     private Storage storage;
+    private ZipArchiver archiver;
+    private ArchiveCache archiveCache;
+    private ArchiveExports archiveExports;
+    private ResumableUploads resumableUploads;
+    private ExecutorService uploadExecutor;
+    private JobScheduler jobScheduler;
+    // the maximum storage usage of a company, in bytes (0 means no limit)
+    private long storageQuota;
+    private final StripedLocks bucketLocks = new StripedLocks(64);
 
     public UserService getUserService() {
         return userService;
@@ -90,13 +153,28 @@ public class MatildaApplication extends Application {
         return documentService;
     }
 
+    public ResumableUploads getResumableUploads() {
+        return resumableUploads;
+    }
+
+    public JobScheduler getJobScheduler() {
+        return jobScheduler;
+    }
+
     @Override
     protected void onInit() {
         setTemplateEngine(new ExtendedPebbleTemplateEngine());
+        registerContentTypeEngine(JacksonJsonEngine.class);
 
-        createServices();
+        DbUtils.init(getPippoSettings());
+        DbUtils.migrate();
+        DbUtils.runWithDb(db -> {
+            createServices();
+            recoverStorage();
+        });
+        createJobScheduler();
 
-        // set upload location
+        // set upload location, on the same volume with the storage, so the uploads are moved and not copied
         setUploadLocation(UPLOAD_LOCATION);
 
         // add routes for static content
@@ -118,10 +196,40 @@ public class MatildaApplication extends Application {
         addAfterFilters();
     }
 
+    @Override
+    protected void onDestroy() {
+        jobScheduler.shutdown();
+        archiver.shutdown();
+        uploadExecutor.shutdown();
+
+        for (Object service : Arrays.asList(companyService, customerService, userService)) {
+            if (service instanceof CachingEntityService) {
+                log.info("{}: {}", service.getClass().getSimpleName(), ((CachingEntityService) service).getCache());
+            }
+        }
+
+        DbUtils.closeDb();
+        DbUtils.destroy();
+    }
+
+    @Override
+    protected RequestResponseFactory createRequestResponseFactory() {
+        return new QuotaRequestResponseFactory(this);
+    }
+
     private void addBeforeFilters() {
+        // the upload is rejected before its body is read (see QuotaRequestResponseFactory)
+        POST("(/admin)?/upload(/batch)?", routeContext -> {
+            if (routeContext.getRequest().getHttpServletRequest().getAttribute(QuotaRequestResponseFactory.QUOTA_EXCEEDED) != null) {
+                routeContext.json().send(Collections.singletonMap("error", getMessages().get("upload.quotaExceeded", routeContext)));
+            } else {
+                routeContext.next();
+            }
+        }).named("uploadQuotaFilter");
+
         // authentication customer filter
         ALL(securePaths(), routeContext -> {
-            if (routeContext.getSession(CUSTOMER) == null) {
+            if (getCustomer(routeContext) == null) {
                 routeContext.redirect("/login");
             } else {
                 routeContext.next();
@@ -147,7 +255,7 @@ public class MatildaApplication extends Application {
         }).named("debtorFilter");
     }
 
-    public File createZip(long companyId, YearMonth date, String documentType) {
+    public void downloadZip(long companyId, YearMonth date, String documentType, Response response) {
         String zipName = new StringBuilder()
             .append(companyService.findById(companyId).getFiscalCode())
             .append('-')
@@ -159,25 +267,59 @@ public class MatildaApplication extends Application {
 
         log.debug("Zip file '{}' for company '{}' @ '{}'", zipName, companyId, date.format(DATE_TIME_FORMATTER));
 
-        Document example = new Document()
-            .setCompanyId(companyId)
-            .setYear(date.getYear())
-            .setMonth(date.getMonthValue());
+        // the connection goes back to the pool while the archive streams (see zip)
+        DbUtils.closeDb();
 
-        if (documentType != null) {
-            example.setType(documentType);
+        // no content length is known in advance so the archive goes out chunked, entry by entry
+        response.contentType(ZIP_CONTENT_TYPE).filenameHeader(zipName);
+        try {
+            OutputStream output = response.getOutputStream();
+            // the archive is built only if it's not in the cache
+            archiveCache.write(companyId, date, documentType, out -> zip(companyId, date, documentType, out), output);
+            output.flush();
+        } catch (Exception e) {
+            throw new PippoRuntimeException(e);
         }
+    }
+
+    /**
+     * Sends the stored file of the document, or only the requested byte range of it.
+     */
+    public void downloadDocument(Document document, Request request, Response response) {
+        String name = document.getName();
+        long size = storage.size(document);
+
+        log.debug("Download document '{}' with size '{}'", document, size);
 
-        List<Document> documents = documentService.findByExample(example);
+        // the document is loaded, the connection goes back to the pool while the file streams
+        DbUtils.closeDb();
 
-        Map<String, InputStream> inputStreams = new HashMap<>();
-        for (Document document : documents) {
-            inputStreams.put(document.getName(), storage.getStream(document));
+        ByteRange range = ByteRange.parse(request.getHeader("Range"), size);
+        if ((range != null) && !range.isSatisfiable()) {
+            response.header("Content-Range", range.getContentRange()).status(REQUESTED_RANGE_NOT_SATISFIABLE).commit();
+            return;
         }
 
+        long position = 0;
+        long count = size;
+        if (range != null) {
+            position = range.getStart();
+            count = range.getLength();
+            response.status(PARTIAL_CONTENT).header("Content-Range", range.getContentRange());
+        }
+
+        // inline, so that the browser can open a PDF and fetch it by ranges
+        response
+            .contentType(getMimeTypes().getContentType(name, "application/octet-stream"))
+            .contentLength(count)
+            .header("Accept-Ranges", "bytes")
+            .header(HttpConstants.Header.CONTENT_DISPOSITION, NetUtils.getContentDisposition("inline", name));
+
         try {
-            return ZipUtils.zip(zipName, inputStreams);
-        } catch (Exception e) {
+            OutputStream output = response.getOutputStream();
+            storage.transferTo(document, position, count, Channels.newChannel(output));
+            output.flush();
+        } catch (IOException e) {
             throw new PippoRuntimeException(e);
         }
     }
@@ -185,53 +327,393 @@ public class MatildaApplication extends Application {
     public void uploadFile(FileItem file, long companyId, YearMonth date, String type) {
         log.debug("Upload file '{}' for company '{}' @ '{}'", file, companyId, date.format(DATE_TIME_FORMATTER));
 
-        Document document = new Document()
+        if (!hasStorageQuota(companyId, file.getSize())) {
+            throw new PippoRuntimeException("Company '{}' has exceeded its storage quota", companyId);
+        }
+
+        Document document = createDocument(file.getSubmittedFileName(), companyId, date, type);
+
+        File preparedFile;
+        try {
+            preparedFile = prepareUpload(file, document);
+        } catch (IOException e) {
+            throw new PippoRuntimeException(e);
+        }
+
+        commitUpload(document, preparedFile);
+    }
+
+    /**
+     * Uploads many files at once. The files are prepared in parallel, on a bounded executor,
+     * then they are committed together and their documents are saved in one batch.
+     * The files that don't fit in the storage quota are rejected before they are written.
+     */
+    public List<UploadResult> uploadFiles(List<FileItem> files, long companyId, YearMonth date, String type) {
+        log.debug("Upload '{}' files for company '{}' @ '{}'", files.size(), companyId, date.format(DATE_TIME_FORMATTER));
+
+        long available = getAvailableStorage(companyId);
+        List<Document> documents = new ArrayList<>();
+        List<Future<File>> tasks = new ArrayList<>();
+        for (FileItem file : files) {
+            Document document = createDocument(file.getSubmittedFileName(), companyId, date, type);
+            documents.add(document);
+            if (file.getSize() > available) {
+                tasks.add(null);
+            } else {
+                available -= file.getSize();
+                tasks.add(uploadExecutor.submit(() -> prepareUpload(file, document)));
+            }
+        }
+
+        List<UploadResult> results = new ArrayList<>();
+        List<File> preparedFiles = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            UploadResult result = new UploadResult(documents.get(i).getName());
+            results.add(result);
+            if (tasks.get(i) == null) {
+                result.setError("Storage quota exceeded");
+                preparedFiles.add(null);
+                continue;
+            }
+
+            try {
+                preparedFiles.add(tasks.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PippoRuntimeException(e);
+            } catch (ExecutionException e) {
+                log.error(e.getMessage(), e);
+                result.setError(e.getCause().getMessage());
+                preparedFiles.add(null);
+            }
+        }
+
+        commitUploads(documents, preparedFiles, results);
+
+        return results;
+    }
+
+    /**
+     * Uploads a file that is on the same volume with the storage (e.g. a complete resumable upload), the file is moved.
+     */
+    public void uploadFile(File file, String name, long companyId, YearMonth date, String type) {
+        log.debug("Upload file '{}' for company '{}' @ '{}'", file, companyId, date.format(DATE_TIME_FORMATTER));
+
+        Document document = createDocument(name, companyId, date, type);
+
+        File preparedFile = storage.newTempFile(document);
+        try {
+            Files.move(file.toPath(), preparedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            preparedFile = storage.prepare(preparedFile, document);
+        } catch (IOException e) {
+            storage.rollback(preparedFile);
+            throw new PippoRuntimeException(e);
+        }
+
+        commitUpload(document, preparedFile);
+    }
+
+    /**
+     * Commits a complete resumable upload, through the same path as the other uploads.
+     */
+    public void completeUpload(ResumableUploads.Upload upload) {
+        synchronized (upload) {
+            // a concurrent request has completed it
+            if (resumableUploads.get(upload.getId()) == null) {
+                return;
+            }
+
+            uploadFile(resumableUploads.getFile(upload), upload.getName(), upload.getCompanyId(), upload.getDate(), upload.getType());
+            resumableUploads.remove(upload);
+        }
+    }
+
+    /**
+     * Returns true if the company can store the given number of bytes, it's checked before an upload is written.
+     * The usage is read from the maintained counters, concurrent uploads can exceed the quota a little.
+     */
+    public boolean hasStorageQuota(long companyId, long size) {
+        return size <= getAvailableStorage(companyId);
+    }
+
+    private long getAvailableStorage(long companyId) {
+        if (storageQuota <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(storageQuota - documentService.getStorageUsage(companyId), 0);
+    }
+
+    private Document createDocument(String name, long companyId, YearMonth date, String type) {
+        // the name is a path in the storage, it must not leave the bucket
+        String safeName = FileUtils.getSafeName(name);
+        if (safeName == null) {
+            throw new PippoRuntimeException("Invalid file name '{}'", name);
+        }
+
+        return new Document()
             .setCompanyId(companyId)
             .setYear(date.getYear())
             .setMonth(date.getMonthValue())
             .setUploadedDate(new Date())
             .setType(type)
-            .setName(file.getSubmittedFileName());
+            .setName(safeName);
+    }
 
-        InputStream inputStream;
-        try{
-            inputStream = file.getInputStream();
+    /**
+     * First phase of an upload, the content is written to a temporary file and synced, in parallel with the other uploads.
+     * The container moves there the file it has spooled (in the same upload location) or writes the part
+     * it has kept in memory, so the content is not copied again.
+     */
+    private File prepareUpload(FileItem file, Document document) throws IOException {
+        File preparedFile = storage.newTempFile(document);
+        try {
+            file.write(preparedFile.getAbsolutePath());
+
+            return storage.prepare(preparedFile, document);
         } catch (IOException e) {
-            throw new PippoRuntimeException(e);
+            storage.rollback(preparedFile);
+            throw e;
         }
+    }
 
-        long size = storage.store(inputStream, document);
+    private void commitUpload(Document document, File preparedFile) {
+        UploadResult result = new UploadResult(document.getName());
+        commitUploads(Collections.singletonList(document), Collections.singletonList(preparedFile), Collections.singletonList(result));
 
-        if (size > 0) {
-            document.setSize(size);
-            documentService.save(document);
+        if (result.getError() != null) {
+            throw new PippoRuntimeException(result.getError());
         }
     }
 
-    public Company getCompany(RouteContext routeContext) {
-        Long companyId = routeContext.getParameter(COMPANY_ID).toLong();
+    /**
+     * Second phase of the uploads (of the same bucket): with the lock of the bucket the prepared files are moved
+     * in place and the documents are saved. A file with the name of a document replaces that document.
+     * A crash between the two is repaired at startup (see {@link #recoverStorage()}).
+     * The files that failed to prepare (null) are skipped.
+     */
+    private void commitUploads(List<Document> documents, List<File> preparedFiles, List<UploadResult> results) {
+        if (documents.isEmpty()) {
+            return;
+        }
 
-        Company company;
-        if ((companyId != null) && (companyId > 0)) {
-            company = companyService.findById(companyId);
-            if (!Objects.equals(company, routeContext.getSession(COMPANY))) {
-                routeContext.setSession(COMPANY, company);
-                routeContext.setLocal(COMPANY, company);
+        Document first = documents.get(0);
+        long companyId = first.getCompanyId();
+        YearMonth date = YearMonth.of(first.getYear(), first.getMonth());
+        String type = first.getType();
+
+        synchronized (bucketLocks.get(getBucketKey(first))) {
+            Map<String, Document> existing = new HashMap<>();
+            for (Document document : documentService.findByCompanyAndPeriod(companyId, date, type)) {
+                existing.put(document.getName(), document);
+            }
+
+            // by name, the last file with a name wins
+            Map<String, Document> committed = new LinkedHashMap<>();
+            List<Document> released = new ArrayList<>();
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                File preparedFile = preparedFiles.get(i);
+                UploadResult result = results.get(i);
+                if (preparedFile == null) {
+                    continue;
+                }
+
+                if (preparedFile.length() == 0) {
+                    storage.rollback(preparedFile);
+                    result.setError("Empty file");
+                    continue;
+                }
+
+                try {
+                    document.setSize(storage.commit(preparedFile, document));
+                } catch (IOException e) {
+                    log.error(e.getMessage(), e);
+                    storage.rollback(preparedFile);
+                    result.setError(e.getMessage());
+                    continue;
+                }
+                result.setSize(document.getSize());
+
+                Document previous = committed.put(document.getName(), document);
+                Document replaced = (previous != null) ? previous : existing.get(document.getName());
+                if (replaced != null) {
+                    document.setId(replaced.getId());
+                    released.add(replaced);
+                }
+            }
+
+            documentService.saveAll(committed.values());
+
+            // a content-addressed document holds a reference to its blob, the file storage replaced the file in place
+            for (Document document : released) {
+                if (document.getHash() != null) {
+                    storage.delete(document);
+                }
             }
-        } else {
-            company = routeContext.getSession(COMPANY);
-            routeContext.setLocal(COMPANY, company);
         }
 
-        if (company == null) {
-            Customer customer = getCustomer(routeContext);
-            if (customer != null) {
-                company = companyService.findById(customer.getCompanyId());
-                routeContext.setSession(COMPANY, company);
+        archiveCache.invalidate(companyId, date, type);
+        archiveExports.invalidate(companyId, date, type);
+    }
+
+    public void deleteDocument(Document document) {
+        log.debug("Delete document '{}'", document);
+
+        if (documentService.delete(document)) {
+            storage.delete(document);
+            YearMonth date = YearMonth.of(document.getYear(), document.getMonth());
+            archiveCache.invalidate(document.getCompanyId(), date, document.getType());
+            archiveExports.invalidate(document.getCompanyId(), date, document.getType());
+        }
+    }
+
+    /**
+     * Streams one archive with the documents of the given companies (of all the companies if null)
+     * for a period, with a folder for each company ("fiscalCode/").
+     * The documents of the period are found with one query and their contents are read in parallel
+     * by the archiver, a bounded number at a time.
+     */
+    public void downloadBulkZip(Collection<Long> companyIds, YearMonth date, String documentType, Response response) {
+        Map<Long, Company> companies = new HashMap<>();
+        for (Company company : companyService.findAll()) {
+            if ((companyIds == null) || companyIds.contains(company.getId())) {
+                companies.put(company.getId(), company);
             }
         }
 
-        return company;
+        Map<Long, String> folders = new HashMap<>();
+        Set<String> folderNames = new HashSet<>();
+        List<DocumentEntry> entries = new ArrayList<>();
+        for (Document document : documentService.findByPeriod(date, documentType)) {
+            Company company = companies.get(document.getCompanyId());
+            if (company != null) {
+                String folder = folders.computeIfAbsent(company.getId(), id -> getFolderName(company, folderNames));
+                entries.add(new DocumentEntry(document, folder + "/" + document.getName()));
+            }
+        }
+
+        String zipName = new StringBuilder()
+            .append("documents")
+            .append('-')
+            .append(date.getMonthValue())
+            .append('-')
+            .append(date.getYear())
+            .append(".zip")
+            .toString();
+
+        log.debug("Zip file '{}' for '{}' companies @ '{}'", zipName, folders.size(), date.format(DATE_TIME_FORMATTER));
+
+        // the documents are loaded, the connection goes back to the pool while the archive streams
+        DbUtils.closeDb();
+
+        response.contentType(ZIP_CONTENT_TYPE).filenameHeader(zipName);
+        try {
+            OutputStream output = response.getOutputStream();
+            archiver.zip(entries.iterator(), output);
+            output.flush();
+        } catch (Exception e) {
+            throw new PippoRuntimeException(e);
+        }
+    }
+
+    /**
+     * Builds the archive in background, on the export pool, and returns the export to follow.
+     * A request for an archive that is built (or ready) gets the same export.
+     * Each export has its own job, a new export waits in the pool while an invalidated one finishes.
+     */
+    public ArchiveExports.Export exportZip(long companyId, YearMonth date, String documentType) {
+        ArchiveExports.Export export = archiveExports.create(companyId, date, documentType);
+        if (!export.start()) {
+            return export;
+        }
+
+        log.debug("Export zip for company '{}' @ '{}'", companyId, date.format(DATE_TIME_FORMATTER));
+        jobScheduler.submit(EXPORT_JOB_PREFIX + export.getKey(), EXPORT_POOL, context -> {
+            try {
+                List<Document> documents = documentService.findByCompanyAndPeriod(companyId, date, documentType);
+                export.setTotalEntries(documents.size());
+                try (OutputStream output = new FileOutputStream(archiveExports.getTempFile(export))) {
+                    archiver.zip(documents.stream().map(DocumentEntry::new).iterator(), output, (name, written) -> {
+                        export.entryWritten(written);
+                        context.setProgress(export.getProgress());
+                    });
+                }
+                archiveExports.finish(export);
+            } catch (Exception e) {
+                archiveExports.fail(export, e);
+                throw e;
+            }
+        });
+
+        return export;
+    }
+
+    /**
+     * Returns the export or null if it doesn't exist (or it expired).
+     */
+    public ArchiveExports.Export getExport(String id) {
+        ArchiveExports.Export export = archiveExports.get(id);
+        if ((export != null) && !export.isReady() && !export.isFailed()) {
+            // the job was rejected by a full pool
+            JobState state = jobScheduler.getJob(EXPORT_JOB_PREFIX + export.getKey());
+            if ((state != null) && JobState.FAILED.equals(state.getStatus())) {
+                archiveExports.fail(export, new IllegalStateException(state.getLastError()));
+            }
+        }
+
+        return export;
+    }
+
+    /**
+     * Sends the archive of a ready export, a 404 if its company was deleted meanwhile.
+     */
+    public void downloadExport(ArchiveExports.Export export, Response response) {
+        Company company = companyService.findById(export.getCompanyId());
+        if (company == null) {
+            response.notFound().commit();
+            return;
+        }
+
+        String zipName = new StringBuilder()
+            .append(company.getFiscalCode())
+            .append('-')
+            .append(export.getDate().getMonthValue())
+            .append('-')
+            .append(export.getDate().getYear())
+            .append(".zip")
+            .toString();
+
+        response.contentType(ZIP_CONTENT_TYPE).filenameHeader(zipName).contentLength(export.getSize());
+        try {
+            OutputStream output = response.getOutputStream();
+            Files.copy(archiveExports.getFile(export).toPath(), output);
+            output.flush();
+        } catch (IOException e) {
+            throw new PippoRuntimeException(e);
+        }
+    }
+
+    private void zip(long companyId, YearMonth date, String documentType, OutputStream output) throws IOException {
+        List<Document> documents = documentService.findByCompanyAndPeriod(companyId, date, documentType);
+        DbUtils.closeDb();
+
+        // the stream of each document is opened only while its entry is prepared or written
+        archiver.zip(documents.stream().map(DocumentEntry::new).iterator(), output);
+    }
+
+    /**
+     * Returns the company selected with the "companyId" parameter (remembered in the session)
+     * or the company of the customer. It's resolved once per request.
+     */
+    public Company getCompany(RouteContext routeContext) {
+        Principal principal = getPrincipal(routeContext);
+        if (!principal.companyResolved) {
+            principal.company = resolveCompany(routeContext, principal.customer);
+            principal.companyResolved = true;
+        }
+
+        return principal.company;
     }
 
     public Long getCompanyId(RouteContext routeContext) {
@@ -241,7 +723,7 @@ public class MatildaApplication extends Application {
     }
 
     public Customer getCustomer(RouteContext routeContext) {
-        return routeContext.getSession(CUSTOMER);
+        return getPrincipal(routeContext).customer;
     }
 
     public YearMonth getDate(RouteContext routeContext) {
@@ -265,15 +747,142 @@ public class MatildaApplication extends Application {
         return date;
     }
 
+    /**
+     * Returns the page requested with the "sort", "order" (asc or desc), "search", "after" and "size" parameters.
+     */
+    public PageRequest getPageRequest(RouteContext routeContext, String defaultSort) {
+        String sort = routeContext.getParameter("sort").toString();
+
+        return new PageRequest()
+            .setSort((sort != null) ? sort : defaultSort)
+            .setDescending("desc".equals(routeContext.getParameter("order").toString()))
+            .setSearch(routeContext.getParameter("search").toString())
+            .setAfter(routeContext.getParameter("after").toString())
+            .setSize(routeContext.getParameter("size").toInt(PageRequest.DEFAULT_SIZE));
+    }
+
+    private Principal getPrincipal(RouteContext routeContext) {
+        Principal principal = routeContext.getLocal(PRINCIPAL);
+        if (principal == null) {
+            principal = new Principal(routeContext.getSession(CUSTOMER));
+            routeContext.setLocal(PRINCIPAL, principal);
+        }
+
+        return principal;
+    }
+
+    private Company resolveCompany(RouteContext routeContext, Customer customer) {
+        // only the id is kept in the session, the company is read through the (cached) service
+        Long companyId = routeContext.getParameter(COMPANY_ID).toLong();
+        Long sessionCompanyId = routeContext.getSession(COMPANY_ID);
+
+        Company company = null;
+        if ((companyId != null) && (companyId > 0)) {
+            company = companyService.findById(companyId);
+            if ((company != null) && !companyId.equals(sessionCompanyId)) {
+                routeContext.setSession(COMPANY_ID, companyId);
+            }
+        } else if (sessionCompanyId != null) {
+            company = companyService.findById(sessionCompanyId);
+        }
+
+        if ((company == null) && (customer != null) && (customer.getCompanyId() != null)) {
+            company = companyService.findById(customer.getCompanyId());
+        }
+
+        return company;
+    }
+
     private void createServices() {
-        ServiceFactory serviceFactory = new ServiceFactory();
+        int cacheSize = getPippoSettings().getInteger("entity.cache.maxSize", 1000);
+        long cacheTimeToLive = TimeUnit.SECONDS.toMillis(getPippoSettings().getLong("entity.cache.timeToLive", 300));
+        ServiceFactory serviceFactory = new ServiceFactory(cacheSize, cacheTimeToLive);
 
-        customerService = serviceFactory.createCustomerService();
         companyService = serviceFactory.createCompanyService();
+        customerService = serviceFactory.createCustomerService(companyService);
         userService = serviceFactory.createUserService();
         documentService = serviceFactory.createDocumentService();
 
-        storage = new FileSystemStorage(UPLOAD_LOCATION);
+        // the existing documents must be migrated (see StorageMigrator) before the deduplication is enabled
+        if (getPippoSettings().getBoolean("storage.deduplication", false)) {
+            storage = new ContentAddressedStorage(UPLOAD_LOCATION);
+        } else {
+            storage = new FileSystemStorage(UPLOAD_LOCATION);
+        }
+
+        int parallelism = getPippoSettings().getInteger("archive.parallelism", Runtime.getRuntime().availableProcessors());
+        int compressionLevel = getPippoSettings().getInteger("archive.compressionLevel", Deflater.DEFAULT_COMPRESSION);
+        long maxBufferedBytes = getPippoSettings().getLong("archive.buffer.maxSize", 64) * 1024 * 1024;
+        archiver = new ZipArchiver(parallelism, compressionLevel, maxBufferedBytes);
+
+        long archiveCacheSize = getPippoSettings().getLong("archive.cache.maxSize", 1024) * 1024 * 1024;
+        archiveCache = new ArchiveCache(ARCHIVE_CACHE_LOCATION, archiveCacheSize);
+
+        long exportTimeToLive = TimeUnit.MINUTES.toMillis(getPippoSettings().getLong("archive.export.timeToLive", 60));
+        archiveExports = new ArchiveExports(ARCHIVE_EXPORT_LOCATION, exportTimeToLive);
+
+        int uploadParallelism = getPippoSettings().getInteger("upload.parallelism", Runtime.getRuntime().availableProcessors());
+        uploadExecutor = Executors.newFixedThreadPool(uploadParallelism);
+
+        storageQuota = getPippoSettings().getLong("storage.quota", 0) * 1024 * 1024;
+
+        // on the same volume with the storage, a complete upload is moved
+        resumableUploads = new ResumableUploads(RESUMABLE_UPLOAD_LOCATION);
+    }
+
+    /**
+     * The maintenance jobs run on their own pool, the exports on another, so a long export doesn't delay them.
+     */
+    private void createJobScheduler() {
+        jobScheduler = new JobScheduler(new IciqlJobStateDao());
+        jobScheduler.createPool(MAINTENANCE_POOL, getPippoSettings().getInteger("job.pool.maintenance", 1));
+        jobScheduler.createPool(EXPORT_POOL, getPippoSettings().getInteger("job.pool.export", 2));
+
+        String storageUsageCron = getPippoSettings().getString("job.storageUsage.cron", "0 3 * * *");
+        jobScheduler.schedule(STORAGE_USAGE_JOB, MAINTENANCE_POOL, Trigger.cron(storageUsageCron),
+            context -> documentService.rebuildStorageUsage());
+        String resumableUploadsCron = getPippoSettings().getString("job.resumableUploads.cron", "0 * * * *");
+        jobScheduler.schedule(RESUMABLE_UPLOADS_JOB, MAINTENANCE_POOL, Trigger.cron(resumableUploadsCron),
+            context -> resumableUploads.removeExpired());
+        jobScheduler.schedule(ARCHIVE_EXPORTS_JOB, MAINTENANCE_POOL, Trigger.cron("*/5 * * * *"), context -> {
+            archiveExports.removeExpired();
+            // the jobs of the exports that expired or were invalidated
+            for (JobState state : jobScheduler.getJobs()) {
+                String name = state.getName();
+                if (name.startsWith(EXPORT_JOB_PREFIX) && !archiveExports.contains(name.substring(EXPORT_JOB_PREFIX.length()))) {
+                    jobScheduler.remove(name);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the leftovers of the uploads interrupted by a crash and adopts the files without documents.
+     */
+    private void recoverStorage() {
+        List<Document> adopted = storage.recover(documentService.findAll());
+        for (Document document : adopted) {
+            log.info("Adopt orphan document '{}'", document);
+            documentService.save(document);
+        }
+    }
+
+    /**
+     * Returns the fiscal code of the company (with the id if another company has the same fiscal code).
+     */
+    private static String getFolderName(Company company, Set<String> folderNames) {
+        String name = StringUtils.isNullOrEmpty(company.getFiscalCode()) ? String.valueOf(company.getId()) : company.getFiscalCode();
+        name = name.replace('/', '_').replace('\\', '_');
+        if (!folderNames.add(name)) {
+            name = name + "-" + company.getId();
+            folderNames.add(name);
+        }
+
+        return name;
+    }
+
+    private static String getBucketKey(Document document) {
+        return document.getCompanyId() + "/" + document.getYear() + "/" + document.getMonth() + "/" + document.getType();
     }
 
     private void addAfterFilters() {
@@ -291,4 +900,56 @@ public class MatildaApplication extends Application {
             .build();
     }
 
+    /**
+     * The customer (from the session) and the company of a request, read once and shared by the filters and the handlers.
+     */
+    private static class Principal {
+
+        final Customer customer;
+
+        Company company;
+        boolean companyResolved;
+
+        Principal(Customer customer) {
+            this.customer = customer;
+        }
+
+    }
+
+    private class DocumentEntry implements ZipArchiver.Entry {
+
+        private final Document document;
+        private final String name;
+
+        public DocumentEntry(Document document) {
+            this(document, document.getName());
+        }
+
+        public DocumentEntry(Document document, String name) {
+            this.document = document;
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getContentType() {
+            return getMimeTypes().getMimeType(document.getName());
+        }
+
+        @Override
+        public long getSize() {
+            return document.getSize();
+        }
+
+        @Override
+        public InputStream getStream() {
+            return storage.getStream(document);
+        }
+
+    }
+
 }
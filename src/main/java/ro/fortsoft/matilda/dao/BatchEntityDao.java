@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.dada.core.Entity;
+import ro.fortsoft.dada.core.EntityDao;
+
+import java.util.Collection;
+
+/**
+ * A dao that writes many entities at once.
+ *
+ * @author Decebal Suiu
+ */
+public interface BatchEntityDao<T extends Entity> extends EntityDao<T> {
+
+    /**
+     * Saves all the entities at once, the new ones are inserted and the others are updated.
+     */
+    void saveAll(Collection<T> entities);
+
+    /**
+     * Deletes the entities with the given ids and returns the number of deleted entities.
+     */
+    int deleteAll(Collection<Long> ids);
+
+}
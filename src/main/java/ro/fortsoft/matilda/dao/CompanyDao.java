@@ -15,14 +15,33 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.core.EntityDao;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public interface CompanyDao extends EntityDao<Company> {
+public interface CompanyDao extends BatchEntityDao<Company> {
+
+    // the sortable and searchable columns of the lists, sorted by name by default
+    Keyset<Company> KEYSET = new Keyset<Company>("COMPANY")
+        .searchable("name", Company::getName)
+        .searchable("fiscalCode", Company::getFiscalCode);
 
     Company findByFiscalCode(String fiscalCode);
 
+    /**
+     * Returns the companies with the given ids, in one query.
+     */
+    List<Company> findByIds(Collection<Long> ids);
+
+    /**
+     * Returns a page of the list, see {@link Keyset}.
+     */
+    Page<Company> findPage(PageRequest request);
+
 }
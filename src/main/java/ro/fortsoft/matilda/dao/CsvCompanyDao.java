@@ -15,16 +15,19 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.csv.CsvEntityDao;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.pippo.core.util.StringUtils;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author Decebal Suiu
  */
-public class CsvCompanyDao extends CsvEntityDao<Company> implements CompanyDao {
+public class CsvCompanyDao extends CsvDao<Company> implements CompanyDao {
 
     public CsvCompanyDao() {
         super("companies.csv");
@@ -51,4 +54,16 @@ public class CsvCompanyDao extends CsvEntityDao<Company> implements CompanyDao {
         return null;
     }
 
+    @Override
+    public List<Company> findByIds(Collection<Long> ids) {
+        return findAll().stream()
+            .filter(company -> ids.contains(company.getId()))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public Page<Company> findPage(PageRequest request) {
+        return KEYSET.filter(findAll(), request);
+    }
+
 }
@@ -15,16 +15,25 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.csv.CsvEntityDao;
 import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.pippo.core.util.StringUtils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Decebal Suiu
  */
-public class CsvCustomerDao extends CsvEntityDao<Customer> implements CustomerDao {
+public class CsvCustomerDao extends CsvDao<Customer> implements CustomerDao {
+
+    // customers by email, built on the first lookup after a load or a change
+    private volatile Map<String, Customer> emailIndex;
+    // incremented after each write, an index built across a write is not kept
+    private final AtomicLong writes = new AtomicLong();
 
     public CsvCustomerDao() {
         super("customers.csv");
@@ -40,15 +49,68 @@ public class CsvCustomerDao extends CsvEntityDao<Customer> implements CustomerDa
 
     @Override
     public Customer findByEmail(String email) {
-        if (!StringUtils.isNullOrEmpty(email)) {
+        if (StringUtils.isNullOrEmpty(email)) {
+            return null;
+        }
+
+        return getEmailIndex().get(email);
+    }
+
+    @Override
+    public Customer save(Customer entity) {
+        try {
+            return super.save(entity);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public boolean delete(Customer entity) {
+        try {
+            return super.delete(entity);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        try {
+            return super.deleteById(id);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public Page<Customer> findPage(PageRequest request) {
+        return KEYSET.filter(findAll(), request);
+    }
+
+    private void invalidateIndex() {
+        writes.incrementAndGet();
+        emailIndex = null;
+    }
+
+    private Map<String, Customer> getEmailIndex() {
+        Map<String, Customer> index = emailIndex;
+        if (index == null) {
+            long stamp = writes.get();
+            index = new HashMap<>();
             for (Customer customer : findAll()) {
-                if (email.equals(customer.getEmailAddress())) {
-                    return customer;
+                if (customer.getEmailAddress() != null) {
+                    // the first one wins, like the scan it replaces
+                    index.putIfAbsent(customer.getEmailAddress(), customer);
                 }
             }
+            // a write made while the index was built can be missing from it
+            if (writes.get() == stamp) {
+                emailIndex = index;
+            }
         }
 
-        return null;
+        return index;
     }
 
 }
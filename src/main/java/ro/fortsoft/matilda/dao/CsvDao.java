@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.dada.core.Entity;
+import ro.fortsoft.dada.csv.CsvEntityDao;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CsvDao<T extends Entity> extends CsvEntityDao<T> implements BatchEntityDao<T> {
+
+    public CsvDao(String csvFile) {
+        super(csvFile);
+    }
+
+    public CsvDao(String csvFile, List<T> defaults) {
+        super(csvFile, defaults);
+    }
+
+    public CsvDao(String csvFile, List<T> defaults, boolean cleanOnStart) {
+        super(csvFile, defaults, cleanOnStart);
+    }
+
+    /**
+     * CsvEntityDao has no batched write, each entity is saved on its own.
+     */
+    @Override
+    public void saveAll(Collection<T> entities) {
+        for (T entity : entities) {
+            save(entity);
+        }
+    }
+
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        int count = 0;
+        for (Long id : ids) {
+            if (deleteById(id)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+}
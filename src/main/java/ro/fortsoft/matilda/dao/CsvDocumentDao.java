@@ -15,15 +15,24 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.csv.CsvEntityDao;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
 
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
  * @author Decebal Suiu
  */
-public class CsvDocumentDao extends CsvEntityDao<Document> implements DocumentDao {
+public class CsvDocumentDao extends CsvDao<Document> implements DocumentDao {
+
+    private final StorageUsageDao usageDao = new CsvStorageUsageDao();
 
     public CsvDocumentDao() {
         super("documents.csv");
@@ -36,4 +45,95 @@ public class CsvDocumentDao extends CsvEntityDao<Document> implements DocumentDa
     public CsvDocumentDao(List<Document> defaults, boolean cleanOnStart) {
         super("documents.csv", defaults, cleanOnStart);
     }
+
+    @Override
+    public List<Document> findByCompanyAndPeriod(long companyId, YearMonth date, String type) {
+        return findAll().stream()
+            .filter(document -> Objects.equals(document.getCompanyId(), companyId))
+            .filter(document -> (document.getYear() == date.getYear()) && (document.getMonth() == date.getMonthValue()))
+            .filter(document -> (type == null) || type.equals(document.getType()))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Document> findByPeriod(YearMonth date, String type) {
+        return findAll().stream()
+            .filter(document -> (document.getYear() == date.getYear()) && (document.getMonth() == date.getMonthValue()))
+            .filter(document -> (type == null) || type.equals(document.getType()))
+            .sorted(Comparator.comparing(Document::getCompanyId))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DocumentStatistics> findStatistics(Long companyId, YearMonth date) {
+        Map<List<Object>, DocumentStatistics> statistics = new LinkedHashMap<>();
+        findAll().stream()
+            .filter(document -> (companyId == null) || Objects.equals(document.getCompanyId(), companyId))
+            .filter(document -> (date == null) || ((document.getYear() == date.getYear()) && (document.getMonth() == date.getMonthValue())))
+            .forEach(document -> {
+                List<Object> key = Arrays.asList(document.getCompanyId(), document.getYear(), document.getMonth(), document.getType());
+                DocumentStatistics item = statistics.computeIfAbsent(key, k -> new DocumentStatistics()
+                    .setCompanyId(document.getCompanyId())
+                    .setYear(document.getYear())
+                    .setMonth(document.getMonth())
+                    .setType(document.getType()));
+                item.setCount(item.getCount() + 1);
+                item.setSize(item.getSize() + document.getSize());
+            });
+
+        return statistics.values().stream()
+            .sorted(Comparator.comparing(DocumentStatistics::getCompanyId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(DocumentStatistics::getYear)
+                .thenComparingInt(DocumentStatistics::getMonth)
+                .thenComparing(DocumentStatistics::getType, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized Document save(Document entity) {
+        UsageDeltas deltas = new UsageDeltas();
+        Document previous = (entity.getId() != null) ? findById(entity.getId()) : null;
+        if (previous != null) {
+            deltas.remove(previous);
+        }
+
+        Document document = super.save(entity);
+        deltas.add(entity).apply(usageDao);
+
+        return document;
+    }
+
+    @Override
+    public boolean delete(Document entity) {
+        return (entity.getId() != null) && deleteById(entity.getId());
+    }
+
+    @Override
+    public synchronized boolean deleteById(long id) {
+        Document previous = findById(id);
+        if ((previous == null) || !super.deleteById(id)) {
+            return false;
+        }
+
+        new UsageDeltas().remove(previous).apply(usageDao);
+
+        return true;
+    }
+
+    @Override
+    public StorageUsageDao getUsageDao() {
+        return usageDao;
+    }
+
+    @Override
+    public synchronized void rebuildUsage() {
+        UsageDeltas deltas = new UsageDeltas();
+        for (DocumentStatistics statistics : findStatistics(null, null)) {
+            deltas.add(statistics.getCompanyId(), statistics.getYear(), statistics.getMonth(), statistics.getCount(), statistics.getSize());
+        }
+
+        usageDao.clear();
+        usageDao.saveAll(deltas.toUsages());
+    }
+
 }
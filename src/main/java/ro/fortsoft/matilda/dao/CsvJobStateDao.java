@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.matilda.domain.JobState;
+
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CsvJobStateDao extends CsvDao<JobState> implements JobStateDao {
+
+    public CsvJobStateDao() {
+        super("jobs.csv");
+    }
+
+    public CsvJobStateDao(List<JobState> defaults) {
+        super("jobs.csv", defaults);
+    }
+
+    public CsvJobStateDao(List<JobState> defaults, boolean cleanOnStart) {
+        super("jobs.csv", defaults, cleanOnStart);
+    }
+
+    @Override
+    public JobState findByName(String name) {
+        for (JobState state : findAll()) {
+            if (name.equals(state.getName())) {
+                return state;
+            }
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CsvStorageUsageDao extends CsvDao<StorageUsage> implements StorageUsageDao {
+
+    public CsvStorageUsageDao() {
+        super("storageUsage.csv");
+    }
+
+    public CsvStorageUsageDao(List<StorageUsage> defaults) {
+        super("storageUsage.csv", defaults);
+    }
+
+    public CsvStorageUsageDao(List<StorageUsage> defaults, boolean cleanOnStart) {
+        super("storageUsage.csv", defaults, cleanOnStart);
+    }
+
+    @Override
+    public StorageUsage findByCompanyAndPeriod(long companyId, YearMonth date) {
+        for (StorageUsage usage : findByCompany(companyId)) {
+            if ((usage.getYear() == date.getYear()) && (usage.getMonth() == date.getMonthValue())) {
+                return usage;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public List<StorageUsage> findByCompany(long companyId) {
+        return findAll().stream()
+            .filter(usage -> Objects.equals(usage.getCompanyId(), companyId))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void add(long companyId, YearMonth date, long documents, long size) {
+        StorageUsage usage = findByCompanyAndPeriod(companyId, date);
+        if (usage == null) {
+            usage = new StorageUsage()
+                .setCompanyId(companyId)
+                .setYear(date.getYear())
+                .setMonth(date.getMonthValue());
+        }
+        usage.setDocuments(usage.getDocuments() + documents);
+        usage.setSize(usage.getSize() + size);
+
+        save(usage);
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (StorageUsage usage : findAll()) {
+            delete(usage);
+        }
+    }
+
+}
@@ -15,16 +15,25 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.csv.CsvEntityDao;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.fortsoft.matilda.domain.User;
 import ro.pippo.core.util.StringUtils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Decebal Suiu
  */
-public class CsvUserDao extends CsvEntityDao<User> implements UserDao {
+public class CsvUserDao extends CsvDao<User> implements UserDao {
+
+    // users by username, built on the first lookup after a load or a change
+    private volatile Map<String, User> usernameIndex;
+    // incremented after each write, an index built across a write is not kept
+    private final AtomicLong writes = new AtomicLong();
 
     public CsvUserDao() {
         super("users.csv");
@@ -39,15 +48,68 @@ public class CsvUserDao extends CsvEntityDao<User> implements UserDao {
     }
 
     public User findByUsername(String username) {
-        if (!StringUtils.isNullOrEmpty(username)) {
+        if (StringUtils.isNullOrEmpty(username)) {
+            return null;
+        }
+
+        return getUsernameIndex().get(username);
+    }
+
+    @Override
+    public User save(User entity) {
+        try {
+            return super.save(entity);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public boolean delete(User entity) {
+        try {
+            return super.delete(entity);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        try {
+            return super.deleteById(id);
+        } finally {
+            invalidateIndex();
+        }
+    }
+
+    @Override
+    public Page<User> findPage(PageRequest request) {
+        return KEYSET.filter(findAll(), request);
+    }
+
+    private void invalidateIndex() {
+        writes.incrementAndGet();
+        usernameIndex = null;
+    }
+
+    private Map<String, User> getUsernameIndex() {
+        Map<String, User> index = usernameIndex;
+        if (index == null) {
+            long stamp = writes.get();
+            index = new HashMap<>();
             for (User user : findAll()) {
-                if (username.equals(user.getUsername())) {
-                    return user;
+                if (user.getUsername() != null) {
+                    // the first one wins, like the scan it replaces
+                    index.putIfAbsent(user.getUsername(), user);
                 }
             }
+            // a write made while the index was built can be missing from it
+            if (writes.get() == stamp) {
+                usernameIndex = index;
+            }
         }
 
-        return null;
+        return index;
     }
 
 }
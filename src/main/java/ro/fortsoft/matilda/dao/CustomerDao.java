@@ -15,14 +15,26 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.core.EntityDao;
 import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 
 /**
  * @author Decebal Suiu
  */
-public interface CustomerDao extends EntityDao<Customer> {
+public interface CustomerDao extends BatchEntityDao<Customer> {
+
+    // the sortable and searchable columns of the lists, sorted by lastName by default
+    Keyset<Customer> KEYSET = new Keyset<Customer>("CUSTOMER")
+        .searchable("lastName", Customer::getLastName)
+        .searchable("firstName", Customer::getFirstName)
+        .searchable("emailAddress", Customer::getEmailAddress);
 
     Customer findByEmail(String email);
 
+    /**
+     * Returns a page of the list, see {@link Keyset}.
+     */
+    Page<Customer> findPage(PageRequest request);
+
 }
@@ -15,11 +15,41 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.core.EntityDao;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
+
+import java.time.YearMonth;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public interface DocumentDao extends EntityDao<Document> {
+public interface DocumentDao extends BatchEntityDao<Document> {
+
+    /**
+     * Returns the documents of a company for a period, with the given type or with any type if the type is null.
+     */
+    List<Document> findByCompanyAndPeriod(long companyId, YearMonth date, String type);
+
+    /**
+     * Returns the documents of all the companies for a period, ordered by company.
+     */
+    List<Document> findByPeriod(YearMonth date, String type);
+
+    /**
+     * Returns the number and the total size of the documents, grouped by company, period and type.
+     * A null company means all the companies and a null date means all the periods.
+     */
+    List<DocumentStatistics> findStatistics(Long companyId, YearMonth date);
+
+    /**
+     * The writes of the documents maintain the storage usage (see {@link StorageUsageDao}).
+     */
+    StorageUsageDao getUsageDao();
+
+    /**
+     * Recomputes the storage usage of all the companies from the documents.
+     */
+    void rebuildUsage();
+
 }
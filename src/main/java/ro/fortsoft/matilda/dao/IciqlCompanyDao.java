@@ -17,6 +17,12 @@ package ro.fortsoft.matilda.dao;
 
 import ro.fortsoft.dada.iciql.IciqlDbFactory;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
@@ -38,4 +44,20 @@ public class IciqlCompanyDao extends IciqlDao<Company> implements CompanyDao {
         return getDb().from(alias).where(alias.getFiscalCode()).is(fiscalCode).selectFirst();
     }
 
+    @Override
+    public List<Company> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Company alias = getAlias();
+
+        return getDb().from(alias).where(alias.getId()).oneOf(ids).select();
+    }
+
+    @Override
+    public Page<Company> findPage(PageRequest request) {
+        return KEYSET.select(getDb(), Company.class, request);
+    }
+
 }
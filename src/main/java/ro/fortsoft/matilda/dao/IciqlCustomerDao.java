@@ -17,6 +17,8 @@ package ro.fortsoft.matilda.dao;
 
 import ro.fortsoft.dada.iciql.IciqlDbFactory;
 import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 
 /**
  * @author Decebal Suiu
@@ -38,4 +40,9 @@ public class IciqlCustomerDao extends IciqlDao<Customer> implements CustomerDao
         return getDb().from(alias).where(alias.getEmailAddress()).is(email).selectFirst();
     }
 
+    @Override
+    public Page<Customer> findPage(PageRequest request) {
+        return KEYSET.select(getDb(), Customer.class, request);
+    }
+
 }
@@ -15,15 +15,27 @@
  */
 package ro.fortsoft.matilda.dao;
 
+import com.iciql.Db;
+import com.iciql.IciqlException;
 import ro.fortsoft.dada.core.Entity;
 import ro.fortsoft.dada.iciql.IciqlDbFactory;
 import ro.fortsoft.dada.iciql.IciqlEntityDao;
 import ro.fortsoft.matilda.util.DbUtils;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * @author Decebal Suiu
  */
-public class IciqlDao<T extends Entity> extends IciqlEntityDao<T> {
+public class IciqlDao<T extends Entity> extends IciqlEntityDao<T> implements BatchEntityDao<T> {
+
+    // the maximum number of ids in an IN condition
+    protected static final int MAX_IDS = 1000;
 
     public IciqlDao() {
         this(DbUtils::getDb);
@@ -33,4 +45,78 @@ public class IciqlDao<T extends Entity> extends IciqlEntityDao<T> {
         super(dbFactory);
     }
 
+    /**
+     * Uses a JDBC batch for the inserts and one for the updates, in a single transaction.
+     */
+    @Override
+    public void saveAll(Collection<T> entities) {
+        List<T> inserts = new ArrayList<>();
+        List<T> updates = new ArrayList<>();
+        for (T entity : entities) {
+            if (entity.getId() == null) {
+                inserts.add(entity);
+            } else {
+                updates.add(entity);
+            }
+        }
+
+        inTransaction(db -> {
+            if (!inserts.isEmpty()) {
+                db.insertAll(inserts);
+            }
+            if (!updates.isEmpty()) {
+                db.updateAll(updates);
+            }
+        });
+    }
+
+    /**
+     * Deletes with one statement for each slice of ids, in a single transaction.
+     */
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        List<Long> list = new ArrayList<>(ids);
+        int[] count = new int[1];
+        inTransaction(db -> {
+            T alias = getAlias();
+            for (int i = 0; i < list.size(); i += MAX_IDS) {
+                List<Long> slice = list.subList(i, Math.min(i + MAX_IDS, list.size()));
+                count[0] += db.from(alias).where(alias.getId()).oneOf(slice).delete();
+            }
+        });
+
+        return count[0];
+    }
+
+    /**
+     * Runs the work in a transaction, committed at the end or rolled back on error.
+     * The automatic savepoints of iciql (a commit for each batch) are off meanwhile.
+     * Inside a running transaction the work is a part of that transaction.
+     */
+    protected void inTransaction(Consumer<Db> work) {
+        Db db = getDb();
+        Connection connection = db.getConnection();
+        try {
+            if (!connection.getAutoCommit()) {
+                work.accept(db);
+                return;
+            }
+
+            connection.setAutoCommit(false);
+            db.setAutoSavePoint(false);
+            try {
+                work.accept(db);
+                connection.commit();
+            } catch (RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                db.setAutoSavePoint(true);
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IciqlException(e);
+        }
+    }
+
 }
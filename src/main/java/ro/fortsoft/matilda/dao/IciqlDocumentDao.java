@@ -15,20 +15,224 @@
  */
 package ro.fortsoft.matilda.dao;
 
+import com.iciql.Db;
 import ro.fortsoft.dada.iciql.IciqlDbFactory;
+import com.iciql.QueryWhere;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
+import ro.fortsoft.matilda.util.DbUtils;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * @author Decebal Suiu
  */
 public class IciqlDocumentDao extends IciqlDao<Document> implements DocumentDao {
 
+    // H2 can't lock a table, the rebuild of the usage is kept apart from the writes of the documents by this lock
+    private static final ReadWriteLock USAGE_LOCK = new ReentrantReadWriteLock();
+
+    private final StorageUsageDao usageDao;
+
     public IciqlDocumentDao() {
-        super();
+        this(DbUtils::getDb);
     }
 
     public IciqlDocumentDao(IciqlDbFactory dbFactory) {
         super(dbFactory);
+
+        usageDao = new IciqlStorageUsageDao(dbFactory);
+    }
+
+    /**
+     * Uses the DOCUMENT_COMPANY_PERIOD index.
+     */
+    @Override
+    public List<Document> findByCompanyAndPeriod(long companyId, YearMonth date, String type) {
+        Document alias = getAlias();
+
+        QueryWhere<Document> query = getDb().from(alias)
+            .where(alias.getCompanyId()).is(companyId)
+            .and(alias.getYear()).is(date.getYear())
+            .and(alias.getMonth()).is(date.getMonthValue());
+        if (type != null) {
+            query = query.and(alias.getType()).is(type);
+        }
+
+        return query.select();
+    }
+
+    @Override
+    public List<Document> findByPeriod(YearMonth date, String type) {
+        Document alias = getAlias();
+
+        QueryWhere<Document> query = getDb().from(alias)
+            .where(alias.getYear()).is(date.getYear())
+            .and(alias.getMonth()).is(date.getMonthValue());
+        if (type != null) {
+            query = query.and(alias.getType()).is(type);
+        }
+
+        return query.orderBy(alias.getCompanyId()).select();
+    }
+
+    /**
+     * The documents are counted by the database, they are not loaded.
+     */
+    @Override
+    public List<DocumentStatistics> findStatistics(Long companyId, YearMonth date) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (companyId != null) {
+            conditions.add("COMPANYID = ?");
+            args.add(companyId);
+        }
+        if (date != null) {
+            conditions.add("YEAR = ?");
+            args.add(date.getYear());
+            conditions.add("MONTH = ?");
+            args.add(date.getMonthValue());
+        }
+
+        StringBuilder sql = new StringBuilder()
+            .append("SELECT COMPANYID, YEAR, MONTH, TYPE, COUNT(*) AS DOCUMENTCOUNT, CAST(SUM(SIZE) AS BIGINT) AS TOTALSIZE")
+            .append(" FROM DOCUMENT");
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" GROUP BY COMPANYID, YEAR, MONTH, TYPE ORDER BY COMPANYID, YEAR, MONTH, TYPE");
+
+        return getDb().executeQuery(DocumentStatistics.class, sql.toString(), args.toArray());
+    }
+
+    /**
+     * The usage is updated in the transaction of the document.
+     */
+    @Override
+    public Document save(Document entity) {
+        inWriteTransaction(db -> {
+            UsageDeltas deltas = new UsageDeltas();
+            if (entity.getId() != null) {
+                Document previous = findById(entity.getId());
+                if (previous != null) {
+                    deltas.remove(previous);
+                }
+            }
+
+            super.save(entity);
+            deltas.add(entity).apply(usageDao);
+        });
+
+        return entity;
+    }
+
+    @Override
+    public void saveAll(Collection<Document> entities) {
+        inWriteTransaction(db -> {
+            List<Long> ids = new ArrayList<>();
+            for (Document document : entities) {
+                if (document.getId() != null) {
+                    ids.add(document.getId());
+                }
+            }
+
+            UsageDeltas deltas = new UsageDeltas();
+            findByIds(ids).forEach(deltas::remove);
+
+            super.saveAll(entities);
+            entities.forEach(deltas::add);
+            deltas.apply(usageDao);
+        });
+    }
+
+    @Override
+    public boolean delete(Document entity) {
+        return (entity.getId() != null) && deleteById(entity.getId());
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        boolean[] deleted = new boolean[1];
+        inWriteTransaction(db -> {
+            Document previous = findById(id);
+            if ((previous != null) && super.deleteById(id)) {
+                new UsageDeltas().remove(previous).apply(usageDao);
+                deleted[0] = true;
+            }
+        });
+
+        return deleted[0];
+    }
+
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        int[] count = new int[1];
+        inWriteTransaction(db -> {
+            UsageDeltas deltas = new UsageDeltas();
+            findByIds(new ArrayList<>(ids)).forEach(deltas::remove);
+
+            count[0] = super.deleteAll(ids);
+            deltas.apply(usageDao);
+        });
+
+        return count[0];
+    }
+
+    @Override
+    public StorageUsageDao getUsageDao() {
+        return usageDao;
+    }
+
+    /**
+     * The usage is replaced, in one transaction, with the sums counted by the database (one INSERT ... SELECT).
+     * The writes of the documents wait, an increment committed during the rebuild would be lost.
+     */
+    @Override
+    public void rebuildUsage() {
+        USAGE_LOCK.writeLock().lock();
+        try {
+            inTransaction(db -> {
+                // the table is created from its model on the first use
+                usageDao.count();
+
+                db.executeUpdate("DELETE FROM STORAGEUSAGE");
+                db.executeUpdate("INSERT INTO STORAGEUSAGE (COMPANYID, YEAR, MONTH, DOCUMENTS, SIZE)"
+                    + " SELECT COMPANYID, YEAR, MONTH, COUNT(*), CAST(SUM(SIZE) AS BIGINT)"
+                    + " FROM DOCUMENT GROUP BY COMPANYID, YEAR, MONTH");
+            });
+        } finally {
+            USAGE_LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A write of the documents (and of their usage) runs under the shared lock, the rebuild of the usage
+     * under the exclusive lock.
+     */
+    private void inWriteTransaction(Consumer<Db> work) {
+        USAGE_LOCK.readLock().lock();
+        try {
+            inTransaction(work);
+        } finally {
+            USAGE_LOCK.readLock().unlock();
+        }
+    }
+
+    private List<Document> findByIds(List<Long> ids) {
+        List<Document> documents = new ArrayList<>();
+        Document alias = getAlias();
+        for (int i = 0; i < ids.size(); i += MAX_IDS) {
+            List<Long> slice = ids.subList(i, Math.min(i + MAX_IDS, ids.size()));
+            documents.addAll(getDb().from(alias).where(alias.getId()).oneOf(slice).select());
+        }
+
+        return documents;
     }
 
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import com.iciql.Db;
+import com.iciql.IciqlException;
+import ro.fortsoft.dada.iciql.IciqlDbFactory;
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public class IciqlStorageUsageDao extends IciqlDao<StorageUsage> implements StorageUsageDao {
+
+    public IciqlStorageUsageDao() {
+        super();
+    }
+
+    public IciqlStorageUsageDao(IciqlDbFactory dbFactory) {
+        super(dbFactory);
+    }
+
+    /**
+     * Uses the STORAGEUSAGE_COMPANY_PERIOD index.
+     */
+    @Override
+    public StorageUsage findByCompanyAndPeriod(long companyId, YearMonth date) {
+        StorageUsage alias = getAlias();
+
+        return getDb().from(alias)
+            .where(alias.getCompanyId()).is(companyId)
+            .and(alias.getYear()).is(date.getYear())
+            .and(alias.getMonth()).is(date.getMonthValue())
+            .selectFirst();
+    }
+
+    @Override
+    public List<StorageUsage> findByCompany(long companyId) {
+        StorageUsage alias = getAlias();
+
+        return getDb().from(alias).where(alias.getCompanyId()).is(companyId).select();
+    }
+
+    /**
+     * The counters are incremented by the database (an UPDATE takes the row lock), concurrent deltas are not lost.
+     */
+    @Override
+    public void add(long companyId, YearMonth date, long documents, long size) {
+        if (increment(companyId, date, documents, size) > 0) {
+            return;
+        }
+
+        StorageUsage usage = new StorageUsage()
+            .setCompanyId(companyId)
+            .setYear(date.getYear())
+            .setMonth(date.getMonthValue())
+            .setDocuments(documents)
+            .setSize(size);
+        try {
+            getDb().insert(usage);
+        } catch (IciqlException e) {
+            // a concurrent transaction has created it
+            if (increment(companyId, date, documents, size) == 0) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        StorageUsage alias = getAlias();
+        getDb().from(alias).delete();
+    }
+
+    private int increment(long companyId, YearMonth date, long documents, long size) {
+        Db db = getDb();
+        StorageUsage alias = getAlias();
+
+        return db.from(alias)
+            .increment(alias.getDocuments()).by(documents)
+            .increment(alias.getSize()).by(size)
+            .where(alias.getCompanyId()).is(companyId)
+            .and(alias.getYear()).is(date.getYear())
+            .and(alias.getMonth()).is(date.getMonthValue())
+            .update();
+    }
+
+}
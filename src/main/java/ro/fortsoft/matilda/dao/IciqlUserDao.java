@@ -16,6 +16,8 @@
 package ro.fortsoft.matilda.dao;
 
 import ro.fortsoft.dada.iciql.IciqlDbFactory;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.fortsoft.matilda.domain.User;
 
 /**
@@ -37,4 +39,9 @@ public class IciqlUserDao extends IciqlDao<User> implements UserDao {
         return getDb().from(alias).where(alias.getUsername()).is(username).selectFirst();
     }
 
+    @Override
+    public Page<User> findPage(PageRequest request) {
+        return KEYSET.select(getDb(), User.class, request);
+    }
+
 }
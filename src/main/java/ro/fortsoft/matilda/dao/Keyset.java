@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import com.iciql.Db;
+import ro.fortsoft.dada.core.Entity;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+import ro.pippo.core.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset pagination of a table: the rows are sorted by a column and then by id, and a page starts
+ * after the (value, id) of the last row of the previous page. With an index on (column, id) a page
+ * reads only its rows, whatever its position.
+ * The same pages are computed in memory for the csv daos.
+ *
+ * Like in H2, a null value is smaller than any other value.
+ *
+ * @author Decebal Suiu
+ */
+public class Keyset<T extends Entity> {
+
+    private static final String ID = "id";
+    private static final Comparator<String> VALUE_COMPARATOR = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final String table;
+    // the first column is the default sort
+    private final Map<String, Function<T, String>> columns;
+    private final List<String> searchColumns;
+
+    public Keyset(String table) {
+        this.table = table;
+
+        columns = new LinkedHashMap<>();
+        searchColumns = new ArrayList<>();
+    }
+
+    /**
+     * Adds a sortable text column, by property name.
+     */
+    public Keyset<T> sortable(String property, Function<T, String> getter) {
+        columns.put(property, getter);
+
+        return this;
+    }
+
+    /**
+     * Adds a sortable column that is also matched by the search text (case insensitive, anywhere in the value).
+     */
+    public Keyset<T> searchable(String property, Function<T, String> getter) {
+        searchColumns.add(property);
+
+        return sortable(property, getter);
+    }
+
+    public Page<T> select(Db db, Class<T> entityClass, PageRequest request) {
+        String sort = getSort(request);
+        boolean descending = request.isDescending();
+        Cursor cursor = Cursor.decode(request.getAfter());
+        int limit = request.getSize() + 1;
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        addSearch(request.getSearch(), conditions, args);
+
+        if (ID.equals(sort)) {
+            if (cursor != null) {
+                conditions.add(descending ? "ID < ?" : "ID > ?");
+                args.add(cursor.id);
+            }
+            String order = descending ? "ID DESC" : "ID";
+
+            return toPage(db.executeQuery(entityClass, toSql(conditions, order, limit), args.toArray()), sort, request.getSize());
+        }
+
+        String column = toColumn(sort);
+        if ((cursor != null) && (cursor.value == null)) {
+            // inside the null values, that are the first in ascending order and the last in descending order
+            conditions.add(descending ? column + " IS NULL AND ID < ?" : "(" + column + " IS NOT NULL OR ID > ?)");
+            args.add(cursor.id);
+        } else if (cursor != null) {
+            // the redundant range lets the database seek in the index
+            String operator = descending ? "<" : ">";
+            conditions.add(column + " " + operator + "= ? AND (" + column + " " + operator + " ? OR (" + column + " = ? AND ID " + operator + " ?))");
+            args.add(cursor.value);
+            args.add(cursor.value);
+            args.add(cursor.value);
+            args.add(cursor.id);
+        } else if (descending) {
+            conditions.add(column + " IS NOT NULL");
+        }
+        String order = descending ? column + " DESC, ID DESC" : column + ", ID";
+
+        List<T> rows = db.executeQuery(entityClass, toSql(conditions, order, limit), args.toArray());
+        if (descending && (rows.size() < limit) && ((cursor == null) || (cursor.value != null))) {
+            // continue with the null values (a range never matches them)
+            conditions.clear();
+            args.clear();
+            addSearch(request.getSearch(), conditions, args);
+            conditions.add(column + " IS NULL");
+
+            rows = new ArrayList<>(rows);
+            rows.addAll(db.executeQuery(entityClass, toSql(conditions, "ID DESC", limit - rows.size()), args.toArray()));
+        }
+
+        return toPage(rows, sort, request.getSize());
+    }
+
+    public Page<T> filter(List<T> entities, PageRequest request) {
+        String sort = getSort(request);
+        boolean descending = request.isDescending();
+        Cursor cursor = Cursor.decode(request.getAfter());
+        String search = StringUtils.isNullOrEmpty(request.getSearch()) ? null : request.getSearch().toLowerCase(Locale.ROOT);
+
+        Comparator<T> comparator = getComparator(sort);
+        List<T> rows = entities.stream()
+            .filter(entity -> (search == null) || matches(entity, search))
+            .filter(entity -> (cursor == null) || isAfter(entity, cursor, sort, descending))
+            .sorted(descending ? comparator.reversed() : comparator)
+            .limit(request.getSize() + 1)
+            .collect(Collectors.toList());
+
+        return toPage(rows, sort, request.getSize());
+    }
+
+    private Page<T> toPage(List<T> rows, String sort, int size) {
+        if (rows.size() <= size) {
+            return new Page<>(rows, null);
+        }
+
+        List<T> items = new ArrayList<>(rows.subList(0, size));
+        T last = items.get(size - 1);
+        String value = ID.equals(sort) ? null : columns.get(sort).apply(last);
+
+        return new Page<>(items, new Cursor(value, last.getId()).encode());
+    }
+
+    private void addSearch(String search, List<String> conditions, List<Object> args) {
+        if (StringUtils.isNullOrEmpty(search) || searchColumns.isEmpty()) {
+            return;
+        }
+
+        String pattern = "%" + escapeLike(search.toLowerCase(Locale.ROOT)) + "%";
+        List<String> likes = new ArrayList<>();
+        for (String property : searchColumns) {
+            likes.add("LOWER(" + toColumn(property) + ") LIKE ?");
+            args.add(pattern);
+        }
+        conditions.add("(" + String.join(" OR ", likes) + ")");
+    }
+
+    private String toSql(List<String> conditions, String order, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table);
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY ").append(order).append(" LIMIT ").append(limit);
+
+        return sql.toString();
+    }
+
+    private String getSort(PageRequest request) {
+        String sort = request.getSort();
+        if (ID.equals(sort) || columns.containsKey(sort)) {
+            return sort;
+        }
+
+        // an unknown sort never reaches the sql
+        return columns.isEmpty() ? ID : columns.keySet().iterator().next();
+    }
+
+    private Comparator<T> getComparator(String sort) {
+        Comparator<T> byId = Comparator.comparing(Entity::getId);
+        if (ID.equals(sort)) {
+            return byId;
+        }
+
+        return Comparator.comparing(columns.get(sort), VALUE_COMPARATOR).thenComparing(byId);
+    }
+
+    private boolean isAfter(T entity, Cursor cursor, String sort, boolean descending) {
+        int result = 0;
+        if (!ID.equals(sort)) {
+            result = VALUE_COMPARATOR.compare(columns.get(sort).apply(entity), cursor.value);
+        }
+        if (result == 0) {
+            result = entity.getId().compareTo(cursor.id);
+        }
+
+        return descending ? (result < 0) : (result > 0);
+    }
+
+    private boolean matches(T entity, String search) {
+        for (String property : searchColumns) {
+            String value = columns.get(property).apply(entity);
+            if ((value != null) && value.toLowerCase(Locale.ROOT).contains(search)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String toColumn(String property) {
+        // iciql doesn't quote the names, so H2 keeps them upper case
+        return property.toUpperCase(Locale.ROOT);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * The (value, id) of the last row of a page, opaque for the clients.
+     */
+    private static class Cursor {
+
+        final String value;
+        final Long id;
+
+        Cursor(String value, Long id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        String encode() {
+            String text = (value != null) ? id + ":" + value : String.valueOf(id);
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Returns null (the first page) for a missing or an invalid cursor.
+         */
+        static Cursor decode(String cursor) {
+            if (StringUtils.isNullOrEmpty(cursor)) {
+                return null;
+            }
+
+            try {
+                String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int index = text.indexOf(':');
+                if (index == -1) {
+                    return new Cursor(null, Long.valueOf(text));
+                }
+
+                return new Cursor(text.substring(index + 1), Long.valueOf(text.substring(0, index)));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+    }
+
+}
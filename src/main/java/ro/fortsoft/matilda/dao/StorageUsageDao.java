@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public interface StorageUsageDao extends BatchEntityDao<StorageUsage> {
+
+    StorageUsage findByCompanyAndPeriod(long companyId, YearMonth date);
+
+    List<StorageUsage> findByCompany(long companyId);
+
+    /**
+     * Adds the deltas to the usage of the company for the month, the usage is created if it doesn't exist.
+     */
+    void add(long companyId, YearMonth date, long documents, long size);
+
+    /**
+     * Deletes the usage of all the companies.
+     */
+    void clear();
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.dao;
+
+import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the changes of the storage usage made by a write of documents, by company and month,
+ * so each usage is updated once.
+ *
+ * @author Decebal Suiu
+ */
+class UsageDeltas {
+
+    // companyId, year, month -> documents, size
+    private final Map<List<Object>, long[]> deltas = new LinkedHashMap<>();
+
+    public UsageDeltas add(Document document) {
+        return add(document, 1);
+    }
+
+    public UsageDeltas remove(Document document) {
+        return add(document, -1);
+    }
+
+    public UsageDeltas add(Long companyId, int year, int month, long documents, long size) {
+        if (companyId != null) {
+            long[] delta = deltas.computeIfAbsent(Arrays.asList(companyId, year, month), key -> new long[2]);
+            delta[0] += documents;
+            delta[1] += size;
+        }
+
+        return this;
+    }
+
+    public void apply(StorageUsageDao usageDao) {
+        for (Map.Entry<List<Object>, long[]> entry : deltas.entrySet()) {
+            long[] delta = entry.getValue();
+            if ((delta[0] != 0) || (delta[1] != 0)) {
+                List<Object> key = entry.getKey();
+                usageDao.add((Long) key.get(0), YearMonth.of((Integer) key.get(1), (Integer) key.get(2)), delta[0], delta[1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the deltas as usages, for a rebuild.
+     */
+    public List<StorageUsage> toUsages() {
+        List<StorageUsage> usages = new ArrayList<>();
+        for (Map.Entry<List<Object>, long[]> entry : deltas.entrySet()) {
+            List<Object> key = entry.getKey();
+            usages.add(new StorageUsage()
+                .setCompanyId((Long) key.get(0))
+                .setYear((Integer) key.get(1))
+                .setMonth((Integer) key.get(2))
+                .setDocuments(entry.getValue()[0])
+                .setSize(entry.getValue()[1]));
+        }
+
+        return usages;
+    }
+
+    private UsageDeltas add(Document document, int sign) {
+        return add(document.getCompanyId(), document.getYear(), document.getMonth(), sign, sign * document.getSize());
+    }
+
+}
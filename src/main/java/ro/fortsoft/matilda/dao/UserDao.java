@@ -15,14 +15,25 @@
  */
 package ro.fortsoft.matilda.dao;
 
-import ro.fortsoft.dada.core.EntityDao;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.fortsoft.matilda.domain.User;
 
 /**
  * @author Decebal Suiu
  */
-public interface UserDao extends EntityDao<User> {
+public interface UserDao extends BatchEntityDao<User> {
+
+    // the sortable and searchable columns of the lists, sorted by username by default
+    Keyset<User> KEYSET = new Keyset<User>("USER")
+        .searchable("username", User::getUsername)
+        .searchable("displayName", User::getDisplayName);
 
     User findByUsername(String username);
 
+    /**
+     * Returns a page of the list, see {@link Keyset}.
+     */
+    Page<User> findPage(PageRequest request);
+
 }
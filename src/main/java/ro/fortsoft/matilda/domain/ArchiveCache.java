@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded, on disk, cache of the monthly archives, keyed by company, period and document type.
+ * When the cache is full the least recently used archives are evicted.
+ * Concurrent requests for the same archive are coalesced: only one build runs and the others wait for it.
+ * The request that builds the archive gets the bytes while they are written, it doesn't wait for the build.
+ *
+ * @author Decebal Suiu
+ */
+public class ArchiveCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveCache.class);
+
+    private final File directory;
+    private final long maxSize;
+
+    // access ordered, the eldest is the least recently used
+    private final Map<String, CachedArchive> archives;
+    private final Map<String, Long> generations;
+    private final ConcurrentMap<String, CompletableFuture<Void>> builds;
+    private long size;
+
+    public ArchiveCache(String directory, long maxSize) {
+        this.directory = new File(directory);
+        this.maxSize = maxSize;
+
+        archives = new LinkedHashMap<>(16, 0.75f, true);
+        generations = new HashMap<>();
+        builds = new ConcurrentHashMap<>();
+
+        clean();
+    }
+
+    /**
+     * Writes the archive to the output stream, from the cache or built with the builder.
+     */
+    public void write(long companyId, YearMonth date, String type, Builder builder, OutputStream output) throws IOException {
+        String key = getKey(companyId, date, type);
+        while (true) {
+            CachedArchive archive = acquire(key);
+            if (archive != null) {
+                log.debug("Send cached archive '{}'", key);
+                try {
+                    Files.copy(archive.file.toPath(), output);
+                } finally {
+                    release(archive);
+                }
+
+                return;
+            }
+
+            CompletableFuture<Void> build = new CompletableFuture<>();
+            CompletableFuture<Void> runningBuild = builds.putIfAbsent(key, build);
+            if (runningBuild == null) {
+                build(key, builder, output, build);
+
+                return;
+            }
+
+            // wait for the running build and try again
+            log.debug("Wait for the build of archive '{}'", key);
+            try {
+                runningBuild.join();
+            } catch (CompletionException e) {
+                log.debug("The build of archive '{}' failed", key);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the archive with the given type and the archive with all types for that company and period.
+     */
+    public synchronized void invalidate(long companyId, YearMonth date, String type) {
+        invalidate(getKey(companyId, date, type));
+        if (type != null) {
+            invalidate(getKey(companyId, date, null));
+        }
+    }
+
+    private void invalidate(String key) {
+        // a running build is now stale, it will not be cached
+        generations.merge(key, 1L, Long::sum);
+        builds.remove(key);
+
+        CachedArchive archive = archives.remove(key);
+        if (archive != null) {
+            log.debug("Invalidate archive '{}'", key);
+            evict(archive);
+        }
+    }
+
+    private void build(String key, Builder builder, OutputStream output, CompletableFuture<Void> build) throws IOException {
+        long generation = getGeneration(key);
+        // each archive has its own file, an evicted archive can still be read (and then deleted)
+        String name = key + "-" + System.nanoTime();
+        File tmpFile = new File(directory, name + ".tmp");
+
+        log.debug("Build archive '{}'", key);
+        TeeOutputStream teeOutput;
+        try (OutputStream fileOutput = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+            teeOutput = new TeeOutputStream(fileOutput, output);
+            builder.build(teeOutput);
+        } catch (IOException | RuntimeException e) {
+            tmpFile.delete();
+            builds.remove(key, build);
+            build.completeExceptionally(e);
+
+            throw e;
+        }
+
+        synchronized (this) {
+            if ((generation == getGeneration(key)) && (tmpFile.length() <= maxSize)) {
+                File file = new File(directory, name + ".zip");
+                Files.move(tmpFile.toPath(), file.toPath());
+                put(key, new CachedArchive(file));
+            } else {
+                log.debug("Archive '{}' is stale or too big, it will not be cached", key);
+                tmpFile.delete();
+            }
+        }
+        builds.remove(key, build);
+        build.complete(null);
+
+        // the client of the building request has gone, but the archive was built for the others
+        if (teeOutput.getError() != null) {
+            throw teeOutput.getError();
+        }
+    }
+
+    private synchronized CachedArchive acquire(String key) {
+        CachedArchive archive = archives.get(key);
+        if (archive != null) {
+            archive.readers++;
+        }
+
+        return archive;
+    }
+
+    private synchronized void release(CachedArchive archive) {
+        archive.readers--;
+        if (archive.evicted && (archive.readers == 0)) {
+            delete(archive);
+        }
+    }
+
+    private void put(String key, CachedArchive archive) {
+        archives.put(key, archive);
+        size += archive.size;
+
+        // evict the least recently used archives
+        Iterator<CachedArchive> it = archives.values().iterator();
+        while ((size > maxSize) && it.hasNext()) {
+            CachedArchive eldest = it.next();
+            if (eldest != archive) {
+                it.remove();
+                evict(eldest);
+            }
+        }
+    }
+
+    private void evict(CachedArchive archive) {
+        size -= archive.size;
+        archive.evicted = true;
+        if (archive.readers == 0) {
+            delete(archive);
+        }
+    }
+
+    private void delete(CachedArchive archive) {
+        if (!archive.file.delete()) {
+            log.warn("Cannot delete archive '{}'", archive.file);
+        }
+    }
+
+    private long getGeneration(String key) {
+        synchronized (this) {
+            return generations.getOrDefault(key, 0L);
+        }
+    }
+
+    /**
+     * The cache is in memory, so the files left by a previous run are removed.
+     */
+    private void clean() {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String getKey(long companyId, YearMonth date, String type) {
+        return new StringBuilder()
+            .append(companyId)
+            .append('-')
+            .append(date.getYear())
+            .append('-')
+            .append(date.getMonthValue())
+            .append('-')
+            .append((type != null) ? type : "all")
+            .toString();
+    }
+
+    /**
+     * Writes an archive to the output stream.
+     */
+    public interface Builder {
+
+        void build(OutputStream output) throws IOException;
+
+    }
+
+    private static class CachedArchive {
+
+        final File file;
+        final long size;
+
+        int readers;
+        boolean evicted;
+
+        CachedArchive(File file) {
+            this.file = file;
+
+            size = file.length();
+        }
+
+    }
+
+    /**
+     * Writes to the file and to the client. If the client goes away, the file is still written.
+     */
+    private static class TeeOutputStream extends OutputStream {
+
+        private final OutputStream fileOutput;
+        private final OutputStream clientOutput;
+
+        private IOException error;
+
+        TeeOutputStream(OutputStream fileOutput, OutputStream clientOutput) {
+            this.fileOutput = fileOutput;
+            this.clientOutput = clientOutput;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            fileOutput.write(b);
+            if (error == null) {
+                try {
+                    clientOutput.write(b);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            fileOutput.write(b, off, len);
+            if (error == null) {
+                try {
+                    clientOutput.write(b, off, len);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            fileOutput.flush();
+            if (error == null) {
+                try {
+                    clientOutput.flush();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+
+        IOException getError() {
+            return error;
+        }
+
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.YearMonth;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The archives built in background, for the companies too big to be zipped while the client waits.
+ * An export is identified by company, period and document type, so a second request for the same
+ * archive joins the running (or finished) export. A change of the documents invalidates it. The finished archive is kept on disk for a while (time to live)
+ * and then removed. The exports are in memory, the files left by a previous run are removed.
+ *
+ * @author Decebal Suiu
+ */
+public class ArchiveExports {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveExports.class);
+
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String TMP_EXTENSION = ".tmp";
+
+    private final File directory;
+    private final long timeToLive;
+    private final ConcurrentMap<String, Export> exports;
+    // each export has its own files, an invalidated export can still be running
+    private final AtomicLong sequence;
+
+    /**
+     * @param timeToLive in milliseconds, after the end of the export
+     */
+    public ArchiveExports(String directory, long timeToLive) {
+        this.directory = new File(directory);
+        this.timeToLive = timeToLive;
+
+        exports = new ConcurrentHashMap<>();
+        sequence = new AtomicLong();
+
+        clean();
+    }
+
+    /**
+     * Returns the export of the archive, a new one if it doesn't exist or it failed.
+     * The caller builds the archive if it wins {@link Export#start()}.
+     */
+    public Export create(long companyId, YearMonth date, String type) {
+        String id = getId(companyId, date, type);
+
+        return exports.compute(id, (key, export) -> {
+            if ((export == null) || export.isFailed()) {
+                export = new Export(id, id + "-" + sequence.incrementAndGet(), companyId, date, type);
+                log.debug("Created export '{}'", id);
+            }
+
+            return export;
+        });
+    }
+
+    /**
+     * Drops the export with the given type and the export with all types for that company and period.
+     */
+    public void invalidate(long companyId, YearMonth date, String type) {
+        invalidate(getId(companyId, date, type));
+        if (type != null) {
+            invalidate(getId(companyId, date, null));
+        }
+    }
+
+    private void invalidate(String id) {
+        Export export = exports.remove(id);
+        if (export != null) {
+            log.debug("Invalidate export '{}'", id);
+            // a running export deletes its archive when it finishes
+            getFile(export).delete();
+        }
+    }
+
+    /**
+     * Returns the export or null if it doesn't exist (or it expired).
+     */
+    public Export get(String id) {
+        return (id != null) ? exports.get(id) : null;
+    }
+
+    /**
+     * Returns true if the export with the given key is still known (not invalidated or expired).
+     */
+    public boolean contains(String key) {
+        return exports.values().stream().anyMatch(export -> export.getKey().equals(key));
+    }
+
+    /**
+     * Returns the file where the archive is written, it becomes the archive on {@link #finish(Export)}.
+     */
+    public File getTempFile(Export export) {
+        return new File(directory, export.fileName + TMP_EXTENSION);
+    }
+
+    public File getFile(Export export) {
+        return new File(directory, export.fileName + ZIP_EXTENSION);
+    }
+
+    public void finish(Export export) throws IOException {
+        File file = getFile(export);
+        Files.move(getTempFile(export).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        export.size = file.length();
+        export.endTime = System.currentTimeMillis();
+        export.ready = true;
+        log.debug("Finished export '{}' with '{}' entries, '{}' bytes", export.id, export.entries, export.size);
+
+        if (exports.get(export.id) != export) {
+            log.debug("Export '{}' was invalidated", export.id);
+            file.delete();
+        }
+    }
+
+    public void fail(Export export, Throwable error) {
+        getTempFile(export).delete();
+        export.error = String.valueOf(error.getMessage());
+        export.endTime = System.currentTimeMillis();
+        log.debug("Failed export '{}'", export.id);
+    }
+
+    /**
+     * Removes the exports (and their archives) finished before the time to live.
+     */
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Export export : exports.values()) {
+            if ((export.endTime > 0) && (now - export.endTime > timeToLive)) {
+                // a new export could have replaced it meanwhile
+                if (exports.remove(export.id, export)) {
+                    log.debug("Remove expired export '{}'", export.id);
+                    getFile(export).delete();
+                }
+            }
+        }
+    }
+
+    private void clean() {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String getId(long companyId, YearMonth date, String type) {
+        return new StringBuilder()
+            .append(companyId)
+            .append('-')
+            .append(date.getYear())
+            .append('-')
+            .append(date.getMonthValue())
+            .append('-')
+            .append((type != null) ? type : "all")
+            .toString();
+    }
+
+    public static class Export {
+
+        private final String id;
+        private final String fileName;
+        private final long companyId;
+        private final YearMonth date;
+        private final String type;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile int totalEntries;
+        private volatile int entries;
+        private volatile long bytes;
+        private volatile long size;
+        private volatile long endTime;
+        private volatile boolean ready;
+        private volatile String error;
+
+        private Export(String id, String fileName, long companyId, YearMonth date, String type) {
+            this.id = id;
+            this.fileName = fileName;
+            this.companyId = companyId;
+            this.date = date;
+            this.type = type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the key of this export, it's unique also among the exports of the same archive.
+         */
+        public String getKey() {
+            return fileName;
+        }
+
+        public long getCompanyId() {
+            return companyId;
+        }
+
+        public YearMonth getDate() {
+            return date;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns true only for the first caller, that must build the archive.
+         */
+        public boolean start() {
+            return started.compareAndSet(false, true);
+        }
+
+        public int getTotalEntries() {
+            return totalEntries;
+        }
+
+        public void setTotalEntries(int totalEntries) {
+            this.totalEntries = totalEntries;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @param bytes the bytes of the archive written so far
+         */
+        public void entryWritten(long bytes) {
+            entries++;
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the size of the finished archive.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the percentage of the entries written.
+         */
+        public int getProgress() {
+            if (ready) {
+                return 100;
+            }
+
+            return (totalEntries > 0) ? (int) (100L * entries / totalEntries) : 0;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "Export{" +
+                "id='" + id + '\'' +
+                ", entries=" + entries +
+                ", totalEntries=" + totalEntries +
+                ", bytes=" + bytes +
+                ", ready=" + ready +
+                ", error='" + error + '\'' +
+                '}';
+        }
+
+    }
+
+}
@@ -16,6 +16,7 @@
 package ro.fortsoft.matilda.domain;
 
 import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
 import com.iciql.Iciql.IQTable;
 import ro.fortsoft.dada.iciql.IciqlEntity;
 
@@ -25,6 +26,7 @@ import java.util.Date;
  * @author Decebal Suiu
  */
 @IQTable(inheritColumns = true)
+@IQIndex(name = "COMPANY_NAME", value = { "name", "id" })
 public class Company extends IciqlEntity {
 
     @IQColumn
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.util.IoUtils;
+import ro.fortsoft.matilda.util.StripedLocks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores each distinct content once, under its SHA-256 hash ("blobs/ab/cd/abcd...").
+ * The content is hashed while it's copied to a temporary file (prepare), that becomes the blob
+ * or is dropped if the blob already exists (commit). The document keeps the hash.
+ * Each blob has a reference count ("abcd....refs"), the blob is deleted when no document uses it.
+ *
+ * @author Decebal Suiu
+ */
+public class ContentAddressedStorage implements Storage {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentAddressedStorage.class);
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String BLOBS_DIRECTORY = "blobs";
+    private static final String TMP_DIRECTORY = "tmp";
+    private static final String REFS_EXTENSION = ".refs";
+
+    private final File blobsDirectory;
+    private final File tmpDirectory;
+    // the stored/deleted blobs are guarded by a lock picked by hash
+    private final StripedLocks locks;
+
+    public ContentAddressedStorage(String baseDirectory) {
+        blobsDirectory = new File(baseDirectory, BLOBS_DIRECTORY);
+        tmpDirectory = new File(blobsDirectory, TMP_DIRECTORY);
+        tmpDirectory.mkdirs();
+
+        locks = new StripedLocks(64);
+    }
+
+    @Override
+    public long store(InputStream stream, Document document) {
+        File preparedFile = null;
+        try {
+            preparedFile = prepare(stream, document);
+
+            return commit(preparedFile, document);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            if (preparedFile != null) {
+                rollback(preparedFile);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * The content is hashed while it's copied, the document gets the hash.
+     */
+    @Override
+    public File prepare(InputStream stream, Document document) throws IOException {
+        MessageDigest digest = createDigest();
+        File preparedFile = newTempFile(document);
+        try {
+            IoUtils.copyAndSync(new DigestInputStream(stream, digest), preparedFile);
+        } catch (IOException e) {
+            preparedFile.delete();
+            throw e;
+        }
+        document.setHash(toHex(digest.digest()));
+
+        return preparedFile;
+    }
+
+    @Override
+    public File newTempFile(Document document) {
+        return new File(tmpDirectory, "blob-" + UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * The file is read once, to compute the hash.
+     */
+    @Override
+    public File prepare(File tempFile, Document document) throws IOException {
+        MessageDigest digest = createDigest();
+        try (InputStream input = new FileInputStream(tempFile)) {
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        IoUtils.sync(tempFile);
+        document.setHash(toHex(digest.digest()));
+
+        return tempFile;
+    }
+
+    /**
+     * The prepared file becomes the blob or, if the blob already exists, it's dropped.
+     * Either way the blob gets a new reference.
+     */
+    @Override
+    public long commit(File preparedFile, Document document) throws IOException {
+        String hash = document.getHash();
+        File blob = getBlob(hash);
+        synchronized (locks.get(hash)) {
+            if (blob.exists()) {
+                log.debug("Blob '{}' exists, reuse it for '{}'", hash, document.getName());
+                preparedFile.delete();
+            } else {
+                blob.getParentFile().mkdirs();
+                Files.move(preparedFile.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            writeReferences(hash, readReferences(hash) + 1);
+        }
+
+        return blob.length();
+    }
+
+    @Override
+    public void rollback(File preparedFile) {
+        preparedFile.delete();
+    }
+
+    @Override
+    public long size(Document document) {
+        String hash = document.getHash();
+
+        return (hash != null) ? getBlob(hash).length() : 0;
+    }
+
+    @Override
+    public InputStream getStream(Document document) {
+        try {
+            return new BufferedInputStream(new FileInputStream(getBlob(document)));
+        } catch (FileNotFoundException e) {
+            log.error(e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Releases the reference of the document, the blob is deleted with its last reference.
+     */
+    @Override
+    public boolean delete(Document document) {
+        String hash = document.getHash();
+        if (hash == null) {
+            return false;
+        }
+
+        synchronized (locks.get(hash)) {
+            try {
+                long references = readReferences(hash) - 1;
+                if (references > 0) {
+                    writeReferences(hash, references);
+                } else {
+                    log.debug("Delete blob '{}'", hash);
+                    Files.deleteIfExists(getReferencesFile(hash).toPath());
+                    return getBlob(hash).delete();
+                }
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public long transferTo(Document document, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(getBlob(document).toPath(), StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < count) {
+                long length = channel.transferTo(position + transferred, count - transferred, target);
+                if (length <= 0) {
+                    // end of file
+                    break;
+                }
+                transferred += length;
+            }
+
+            return transferred;
+        }
+    }
+
+    /**
+     * The reference counts are recomputed from the documents and the blobs without documents are removed.
+     * An orphan blob can't be adopted, only its document knows the name and the bucket.
+     */
+    @Override
+    public List<Document> recover(List<Document> documents) {
+        File[] tmpFiles = tmpDirectory.listFiles();
+        if (tmpFiles != null) {
+            for (File file : tmpFiles) {
+                file.delete();
+            }
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Document document : documents) {
+            if (document.getHash() != null) {
+                counts.merge(document.getHash(), 1L, Long::sum);
+            }
+        }
+
+        File[] directories = blobsDirectory.listFiles(file -> file.isDirectory() && !file.equals(tmpDirectory));
+        if (directories == null) {
+            return Collections.emptyList();
+        }
+
+        for (File directory : directories) {
+            File[] buckets = directory.listFiles(File::isDirectory);
+            if (buckets == null) {
+                continue;
+            }
+
+            for (File bucket : buckets) {
+                File[] blobs = bucket.listFiles(file -> !file.getName().endsWith(REFS_EXTENSION));
+                if (blobs == null) {
+                    continue;
+                }
+
+                for (File blob : blobs) {
+                    String hash = blob.getName();
+                    long references = counts.getOrDefault(hash, 0L);
+                    try {
+                        if (references == 0) {
+                            log.debug("Remove orphan blob '{}'", hash);
+                            Files.deleteIfExists(getReferencesFile(hash).toPath());
+                            blob.delete();
+                        } else if (readReferences(hash) != references) {
+                            log.debug("Fix the reference count of blob '{}'", hash);
+                            writeReferences(hash, references);
+                        }
+                    } catch (IOException e) {
+                        log.error(e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    private long readReferences(String hash) throws IOException {
+        File file = getReferencesFile(hash);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim());
+    }
+
+    private void writeReferences(String hash, long references) throws IOException {
+        // replace the file atomically, a crash never leaves a half written count
+        File tmpFile = File.createTempFile("refs", ".tmp", tmpDirectory);
+        Files.write(tmpFile.toPath(), String.valueOf(references).getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmpFile.toPath(), getReferencesFile(hash).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private File getBlob(Document document) throws FileNotFoundException {
+        String hash = document.getHash();
+        if (hash == null) {
+            // not stored by this storage, see StorageMigrator
+            throw new FileNotFoundException("Document '" + document.getId() + "' has no blob");
+        }
+
+        return getBlob(hash);
+    }
+
+    private File getBlob(String hash) {
+        return new File(getBucket(hash), hash);
+    }
+
+    private File getReferencesFile(String hash) {
+        return new File(getBucket(hash), hash + REFS_EXTENSION);
+    }
+
+    private File getBucket(String hash) {
+        // two levels of 256 directories keep the directories small
+        return new File(new File(blobsDirectory, hash.substring(0, 2)), hash.substring(2, 4));
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+
+}
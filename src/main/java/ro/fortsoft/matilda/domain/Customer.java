@@ -16,7 +16,10 @@
 package ro.fortsoft.matilda.domain;
 
 import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
+import com.iciql.Iciql.IQIndexes;
 import com.iciql.Iciql.IQTable;
+import com.iciql.Iciql.IndexType;
 import ro.fortsoft.dada.iciql.IciqlEntity;
 
 import java.util.Date;
@@ -25,6 +28,10 @@ import java.util.Date;
  * @author Decebal Suiu
  */
 @IQTable(inheritColumns = true)
+@IQIndexes({
+    @IQIndex(name = "CUSTOMER_EMAILADDRESS", type = IndexType.UNIQUE, value = "emailAddress"),
+    @IQIndex(name = "CUSTOMER_LASTNAME", value = { "lastName", "id" })
+})
 public class Customer extends IciqlEntity {
 
     @IQColumn
@@ -16,6 +16,8 @@
 package ro.fortsoft.matilda.domain;
 
 import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
+import com.iciql.Iciql.IQIndexes;
 import com.iciql.Iciql.IQTable;
 import ro.fortsoft.dada.iciql.IciqlEntity;
 
@@ -25,6 +27,9 @@ import java.util.Date;
  * @author Decebal Suiu
  */
 @IQTable(inheritColumns = true)
+@IQIndexes({
+    @IQIndex(name = "DOCUMENT_COMPANY_PERIOD", value = { "companyId", "year", "month", "type" })
+})
 public class Document extends IciqlEntity {
 
     public static final String IN_TYPE = "in";
@@ -51,6 +56,9 @@ public class Document extends IciqlEntity {
     @IQColumn
     private String type; // IN | OUT
 
+    @IQColumn
+    private String hash; // SHA-256 of the content, set by ContentAddressedStorage
+
     public Document() {
     }
 
@@ -128,6 +136,16 @@ public class Document extends IciqlEntity {
         return this;
     }
 
+    public String getHash() {
+        return hash;
+    }
+
+    public Document setHash(String hash) {
+        this.hash = hash;
+
+        return this;
+    }
+
     @Override
     public String toString() {
         return "Document{" +
@@ -138,6 +156,7 @@ public class Document extends IciqlEntity {
             ", uploadedDate=" + uploadedDate +
             ", size=" + size +
             ", type='" + type + '\'' +
+            ", hash='" + hash + '\'' +
             '}';
     }
 
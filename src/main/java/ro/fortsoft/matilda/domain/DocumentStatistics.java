@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import com.iciql.Iciql.IQColumn;
+
+/**
+ * The number and the total size of the documents of a company, for a period and a type.
+ * It's a row of a GROUP BY query, not an entity.
+ *
+ * @author Decebal Suiu
+ */
+public class DocumentStatistics {
+
+    @IQColumn
+    private Long companyId;
+
+    @IQColumn
+    private int year;
+
+    @IQColumn
+    private int month;
+
+    @IQColumn
+    private String type;
+
+    @IQColumn(name = "documentCount")
+    private long count;
+
+    @IQColumn(name = "totalSize")
+    private long size;
+
+    public Long getCompanyId() {
+        return companyId;
+    }
+
+    public DocumentStatistics setCompanyId(Long companyId) {
+        this.companyId = companyId;
+
+        return this;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public DocumentStatistics setYear(int year) {
+        this.year = year;
+
+        return this;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public DocumentStatistics setMonth(int month) {
+        this.month = month;
+
+        return this;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public DocumentStatistics setType(String type) {
+        this.type = type;
+
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public DocumentStatistics setCount(long count) {
+        this.count = count;
+
+        return this;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public DocumentStatistics setSize(long size) {
+        this.size = size;
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentStatistics{" +
+            "companyId=" + companyId +
+            ", year=" + year +
+            ", month=" + month +
+            ", type='" + type + '\'' +
+            ", count=" + count +
+            ", size=" + size +
+            '}';
+    }
+
+}
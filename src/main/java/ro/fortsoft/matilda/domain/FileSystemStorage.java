@@ -15,6 +15,8 @@
  */
 package ro.fortsoft.matilda.domain;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ro.fortsoft.matilda.util.IoUtils;
 
 import java.io.BufferedInputStream;
@@ -23,12 +25,30 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * @author Decebal Suiu
  */
 public class FileSystemStorage implements Storage {
 
+    private static final Logger log = LoggerFactory.getLogger(FileSystemStorage.class);
+
+    private static final String TMP_PREFIX = ".upload-";
+    private static final String TMP_SUFFIX = ".tmp";
+
     private String baseDirectory;
 
     public FileSystemStorage(String baseDirectory) {
@@ -37,20 +57,70 @@ public class FileSystemStorage implements Storage {
 
     @Override
     public long store(InputStream stream, Document document) {
-        File bucket = getBucket(document);
-        if (!bucket.exists()) {
-            bucket.mkdirs();
-        }
-
+        File preparedFile = null;
         try {
-            return IoUtils.copy(stream, getFile(document));
+            preparedFile = prepare(stream, document);
+
+            return commit(preparedFile, document);
         } catch (IOException e) {
             e.printStackTrace();
+            if (preparedFile != null) {
+                rollback(preparedFile);
+            }
         }
 
         return -1;
     }
 
+    @Override
+    public File prepare(InputStream stream, Document document) throws IOException {
+        File preparedFile = newTempFile(document);
+        try {
+            IoUtils.copyAndSync(stream, preparedFile);
+        } catch (IOException e) {
+            preparedFile.delete();
+            throw e;
+        }
+
+        return preparedFile;
+    }
+
+    /**
+     * The temporary file is in the bucket of the document, so the rename is atomic.
+     */
+    @Override
+    public File newTempFile(Document document) {
+        File bucket = getBucket(document);
+        if (!bucket.exists()) {
+            bucket.mkdirs();
+        }
+
+        return new File(bucket, TMP_PREFIX + UUID.randomUUID() + TMP_SUFFIX);
+    }
+
+    @Override
+    public File prepare(File tempFile, Document document) throws IOException {
+        IoUtils.sync(tempFile);
+
+        return tempFile;
+    }
+
+    /**
+     * A concurrent upload with the same name replaces the whole file, the bytes are never mixed.
+     */
+    @Override
+    public long commit(File preparedFile, Document document) throws IOException {
+        File file = getFile(document);
+        Files.move(preparedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        return file.length();
+    }
+
+    @Override
+    public void rollback(File preparedFile) {
+        preparedFile.delete();
+    }
+
     @Override
     public long size(Document document) {
         return getFile(document).length();
@@ -67,6 +137,92 @@ public class FileSystemStorage implements Storage {
         return null;
     }
 
+    @Override
+    public boolean delete(Document document) {
+        return getFile(document).delete();
+    }
+
+    /**
+     * Uses {@link FileChannel#transferTo(long, long, WritableByteChannel)}, the region is not read in the heap
+     * by the storage. The JDK copies it through a buffer when the target is not a file or socket channel
+     * (e.g. the response stream).
+     */
+    @Override
+    public long transferTo(Document document, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(getFile(document).toPath(), StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < count) {
+                long length = channel.transferTo(position + transferred, count - transferred, target);
+                if (length <= 0) {
+                    // end of file
+                    break;
+                }
+                transferred += length;
+            }
+
+            return transferred;
+        }
+    }
+
+    /**
+     * Walks the bucket tree, the files without a document are adopted.
+     */
+    @Override
+    public List<Document> recover(List<Document> documents) {
+        Set<File> files = new HashSet<>();
+        for (Document document : documents) {
+            files.add(getFile(document).getAbsoluteFile());
+        }
+
+        List<Document> adopted = new ArrayList<>();
+        for (File companyDirectory : listDirectories(new File(baseDirectory))) {
+            if (!companyDirectory.getName().matches("\\d+")) {
+                // not a bucket (e.g. the blobs of ContentAddressedStorage)
+                continue;
+            }
+
+            for (File yearDirectory : listDirectories(companyDirectory)) {
+                for (File monthDirectory : listDirectories(yearDirectory)) {
+                    for (File typeDirectory : listDirectories(monthDirectory)) {
+                        File[] bucketFiles = typeDirectory.listFiles(File::isFile);
+                        if (bucketFiles == null) {
+                            continue;
+                        }
+
+                        for (File file : bucketFiles) {
+                            if (file.getName().startsWith(TMP_PREFIX) || (file.length() == 0)) {
+                                log.debug("Remove '{}'", file);
+                                file.delete();
+                            } else if (!files.contains(file.getAbsoluteFile())) {
+                                try {
+                                    adopted.add(new Document()
+                                        .setCompanyId(Long.parseLong(companyDirectory.getName()))
+                                        .setYear(Integer.parseInt(yearDirectory.getName()))
+                                        .setMonth(Integer.parseInt(monthDirectory.getName()))
+                                        .setType(typeDirectory.getName())
+                                        .setName(file.getName())
+                                        .setSize(file.length())
+                                        .setUploadedDate(new Date(file.lastModified())));
+                                    log.debug("Adopt '{}'", file);
+                                } catch (NumberFormatException e) {
+                                    log.warn("Cannot adopt '{}', it's not in a bucket", file);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return adopted;
+    }
+
+    private List<File> listDirectories(File directory) {
+        File[] directories = directory.listFiles(File::isDirectory);
+
+        return (directories != null) ? Arrays.asList(directories) : Collections.emptyList();
+    }
+
     private File getFile(Document document) {
         return new File(getBucket(document), document.getName());
     }
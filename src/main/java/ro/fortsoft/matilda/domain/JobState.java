@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
+import com.iciql.Iciql.IQIndexes;
+import com.iciql.Iciql.IQTable;
+import com.iciql.Iciql.IndexType;
+import ro.fortsoft.dada.iciql.IciqlEntity;
+
+import java.util.Date;
+
+/**
+ * The persisted state of a job (see {@link ro.fortsoft.matilda.job.JobScheduler}), it survives a restart.
+ *
+ * @author Decebal Suiu
+ */
+@IQTable(inheritColumns = true)
+@IQIndexes({
+    @IQIndex(name = "JOBSTATE_NAME", type = IndexType.UNIQUE, value = "name")
+})
+public class JobState extends IciqlEntity {
+
+    public static final String SCHEDULED = "scheduled";
+    public static final String RUNNING = "running";
+    public static final String SUCCEEDED = "succeeded";
+    public static final String FAILED = "failed";
+    // the application stopped while the job was running
+    public static final String INTERRUPTED = "interrupted";
+
+    @IQColumn
+    private String name;
+
+    @IQColumn
+    private String pool;
+
+    @IQColumn
+    private String schedule;
+
+    @IQColumn
+    private String status;
+
+    @IQColumn
+    private Date nextRun;
+
+    @IQColumn
+    private Date lastStart;
+
+    @IQColumn
+    private Date lastEnd;
+
+    @IQColumn
+    private String lastError;
+
+    @IQColumn
+    private long runs;
+
+    @IQColumn
+    private volatile int progress;
+
+    public JobState() {
+    }
+
+    public JobState(Long id) {
+        super(id);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public JobState setName(String name) {
+        this.name = name;
+
+        return this;
+    }
+
+    public String getPool() {
+        return pool;
+    }
+
+    public JobState setPool(String pool) {
+        this.pool = pool;
+
+        return this;
+    }
+
+    public String getSchedule() {
+        return schedule;
+    }
+
+    public JobState setSchedule(String schedule) {
+        this.schedule = schedule;
+
+        return this;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public JobState setStatus(String status) {
+        this.status = status;
+
+        return this;
+    }
+
+    public Date getNextRun() {
+        return nextRun;
+    }
+
+    public JobState setNextRun(Date nextRun) {
+        this.nextRun = nextRun;
+
+        return this;
+    }
+
+    public Date getLastStart() {
+        return lastStart;
+    }
+
+    public JobState setLastStart(Date lastStart) {
+        this.lastStart = lastStart;
+
+        return this;
+    }
+
+    public Date getLastEnd() {
+        return lastEnd;
+    }
+
+    public JobState setLastEnd(Date lastEnd) {
+        this.lastEnd = lastEnd;
+
+        return this;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public JobState setLastError(String lastError) {
+        this.lastError = lastError;
+
+        return this;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public JobState setRuns(long runs) {
+        this.runs = runs;
+
+        return this;
+    }
+
+    public int getProgress() {
+        return progress;
+    }
+
+    public JobState setProgress(int progress) {
+        this.progress = progress;
+
+        return this;
+    }
+
+    public boolean isRunning() {
+        return RUNNING.equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return "JobState{" +
+            "name='" + name + '\'' +
+            ", pool='" + pool + '\'' +
+            ", schedule='" + schedule + '\'' +
+            ", status='" + status + '\'' +
+            ", nextRun=" + nextRun +
+            ", lastStart=" + lastStart +
+            ", lastEnd=" + lastEnd +
+            ", runs=" + runs +
+            '}';
+    }
+
+}
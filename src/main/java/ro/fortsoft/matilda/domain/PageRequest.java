@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import java.io.Serializable;
+
+/**
+ * A page of a list: the sort column and direction, an optional search text and the position.
+ * The position is the cursor of the last row of the previous page (keyset pagination),
+ * so a page costs the same no matter how deep it is.
+ *
+ * @author Decebal Suiu
+ */
+public class PageRequest implements Serializable {
+
+    public static final int DEFAULT_SIZE = 50;
+    public static final int MAX_SIZE = 200;
+
+    private String sort;
+    private boolean descending;
+    private String search;
+    private String after;
+    private int size = DEFAULT_SIZE;
+
+    public String getSort() {
+        return sort;
+    }
+
+    public PageRequest setSort(String sort) {
+        this.sort = sort;
+
+        return this;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public PageRequest setDescending(boolean descending) {
+        this.descending = descending;
+
+        return this;
+    }
+
+    public String getSearch() {
+        return search;
+    }
+
+    public PageRequest setSearch(String search) {
+        this.search = search;
+
+        return this;
+    }
+
+    /**
+     * Returns the cursor of the last row of the previous page or null for the first page.
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public PageRequest setAfter(String after) {
+        this.after = after;
+
+        return this;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public PageRequest setSize(int size) {
+        this.size = Math.max(1, Math.min(size, MAX_SIZE));
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "PageRequest{" +
+            "sort='" + sort + '\'' +
+            ", descending=" + descending +
+            ", search='" + search + '\'' +
+            ", after='" + after + '\'' +
+            ", size=" + size +
+            '}';
+    }
+
+}
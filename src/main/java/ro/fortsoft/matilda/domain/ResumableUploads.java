@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.YearMonth;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The staging area of the resumable (chunked) uploads.
+ * Each upload has a staging file, where the chunks are appended, and a small properties file with
+ * the target of the upload (company, period, type, name) and the expected length.
+ * Both are on disk, so an upload can be resumed after a restart. The offset is the length of the staging file.
+ *
+ * @author Decebal Suiu
+ */
+public class ResumableUploads {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableUploads.class);
+
+    private static final String PART_EXTENSION = ".part";
+    private static final String INFO_EXTENSION = ".properties";
+
+    // the uploads not touched for a week are abandoned
+    private static final long EXPIRATION = TimeUnit.DAYS.toMillis(7);
+
+    private final File directory;
+    private final ConcurrentMap<String, Upload> uploads;
+
+    public ResumableUploads(String directory) {
+        this.directory = new File(directory);
+        this.directory.mkdirs();
+
+        uploads = new ConcurrentHashMap<>();
+
+        removeExpired();
+    }
+
+    public Upload create(long companyId, YearMonth date, String type, String name, long length) throws IOException {
+        Upload upload = new Upload(UUID.randomUUID().toString().replace("-", ""));
+        upload.companyId = companyId;
+        upload.date = date;
+        upload.type = type;
+        upload.name = name;
+        upload.length = length;
+
+        Properties info = new Properties();
+        info.setProperty("companyId", String.valueOf(companyId));
+        info.setProperty("date", date.toString());
+        info.setProperty("type", type);
+        info.setProperty("name", name);
+        info.setProperty("length", String.valueOf(length));
+        try (OutputStream output = new FileOutputStream(getInfoFile(upload.id))) {
+            info.store(output, null);
+        }
+        getPartFile(upload.id).createNewFile();
+
+        uploads.put(upload.id, upload);
+        log.debug("Created resumable upload '{}'", upload);
+
+        return upload;
+    }
+
+    /**
+     * Returns the upload or null if it doesn't exist (or it's finished).
+     */
+    public Upload get(String id) {
+        if ((id == null) || !id.matches("[0-9a-f]{32}")) {
+            return null;
+        }
+
+        return uploads.computeIfAbsent(id, this::load);
+    }
+
+    /**
+     * Appends the input at the given offset, which must be the current offset of the upload.
+     * The bytes received before an interruption are kept, the client resumes from the new offset.
+     *
+     * @return the new offset
+     */
+    public long append(Upload upload, long offset, InputStream input) throws IOException {
+        synchronized (upload) {
+            if (upload.removed) {
+                throw new IllegalStateException("Upload '" + upload.id + "' was removed");
+            }
+
+            File file = getPartFile(upload.id);
+            if (offset != file.length()) {
+                throw new IllegalStateException("Offset '" + offset + "' doesn't match '" + file.length() + "'");
+            }
+
+            try (FileOutputStream output = new FileOutputStream(file, true)) {
+                try {
+                    byte[] buffer = new byte[64 * 1024];
+                    long remaining = upload.length - offset;
+                    int length;
+                    while ((remaining > 0) && ((length = input.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1)) {
+                        output.write(buffer, 0, length);
+                        remaining -= length;
+                    }
+                } finally {
+                    output.getFD().sync();
+                }
+            }
+
+            return file.length();
+        }
+    }
+
+    public long getOffset(Upload upload) {
+        return getPartFile(upload.id).length();
+    }
+
+    public boolean isComplete(Upload upload) {
+        return getOffset(upload) >= upload.length;
+    }
+
+    /**
+     * Returns the staging file, it can be moved away (see {@link #remove(Upload)}).
+     */
+    public File getFile(Upload upload) {
+        return getPartFile(upload.id);
+    }
+
+    public void remove(Upload upload) {
+        synchronized (upload) {
+            delete(upload.id);
+            upload.removed = true;
+        }
+        log.debug("Removed resumable upload '{}'", upload.id);
+    }
+
+    private Upload load(String id) {
+        File infoFile = getInfoFile(id);
+        if (!infoFile.exists()) {
+            return null;
+        }
+
+        Properties info = new Properties();
+        try (InputStream input = new FileInputStream(infoFile)) {
+            info.load(input);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            return null;
+        }
+
+        Upload upload = new Upload(id);
+        upload.companyId = Long.parseLong(info.getProperty("companyId"));
+        upload.date = YearMonth.parse(info.getProperty("date"));
+        upload.type = info.getProperty("type");
+        upload.name = info.getProperty("name");
+        upload.length = Long.parseLong(info.getProperty("length"));
+
+        return upload;
+    }
+
+    /**
+     * Removes the uploads not touched for a week, it runs at startup and then periodically.
+     */
+    public void removeExpired() {
+        File[] infoFiles = directory.listFiles(file -> file.getName().endsWith(INFO_EXTENSION));
+        if (infoFiles == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (File infoFile : infoFiles) {
+            String id = infoFile.getName().substring(0, infoFile.getName().length() - INFO_EXTENSION.length());
+            Upload upload = uploads.get(id);
+            if (upload == null) {
+                if (isExpired(id, now)) {
+                    log.debug("Remove expired resumable upload '{}'", id);
+                    delete(id);
+                }
+                continue;
+            }
+
+            // a chunk can arrive meanwhile
+            synchronized (upload) {
+                if (!upload.removed && isExpired(id, now)) {
+                    log.debug("Remove expired resumable upload '{}'", id);
+                    delete(id);
+                    upload.removed = true;
+                }
+            }
+        }
+    }
+
+    private boolean isExpired(String id, long now) {
+        // the staging file is touched by each chunk
+        return now - Math.max(getPartFile(id).lastModified(), getInfoFile(id).lastModified()) > EXPIRATION;
+    }
+
+    private void delete(String id) {
+        uploads.remove(id);
+        getPartFile(id).delete();
+        getInfoFile(id).delete();
+    }
+
+    private File getPartFile(String id) {
+        return new File(directory, id + PART_EXTENSION);
+    }
+
+    private File getInfoFile(String id) {
+        return new File(directory, id + INFO_EXTENSION);
+    }
+
+    public static class Upload {
+
+        private final String id;
+
+        private long companyId;
+        private YearMonth date;
+        private String type;
+        private String name;
+        private long length;
+        private boolean removed;
+
+        private Upload(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getCompanyId() {
+            return companyId;
+        }
+
+        public YearMonth getDate() {
+            return date;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return "Upload{" +
+                "id='" + id + '\'' +
+                ", companyId=" + companyId +
+                ", date=" + date +
+                ", type='" + type + '\'' +
+                ", name='" + name + '\'' +
+                ", length=" + length +
+                '}';
+        }
+
+    }
+
+}
@@ -15,17 +15,77 @@
  */
 package ro.fortsoft.matilda.domain;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
 public interface Storage {
 
+    /**
+     * Prepares and commits the content of the document in one step.
+     *
+     * @return the size of the content or -1 if it cannot be stored
+     */
     long store(InputStream inputStream, Document document);
 
+    /**
+     * Writes the content to a temporary file, on the same file system, and syncs it to the disk.
+     * The document gets the content only when the prepared file is committed.
+     */
+    File prepare(InputStream inputStream, Document document) throws IOException;
+
+    /**
+     * Returns a new (not created) temporary file, on the same file system as the stored content,
+     * where someone else writes the content (e.g. the servlet container moves there a spooled upload).
+     */
+    File newTempFile(Document document);
+
+    /**
+     * Prepares a temporary file (see {@link #newTempFile(Document)}) that is already written, without copying it.
+     */
+    File prepare(File tempFile, Document document) throws IOException;
+
+    /**
+     * Moves the prepared file in place, atomically.
+     *
+     * @return the size of the content
+     */
+    long commit(File preparedFile, Document document) throws IOException;
+
+    /**
+     * Discards a prepared file that will not be committed.
+     */
+    void rollback(File preparedFile);
+
     long size(Document document);
 
     InputStream getStream(Document document);
 
+    /**
+     * Deletes the stored content of the document.
+     *
+     * @return true if the document had stored content
+     */
+    boolean delete(Document document);
+
+    /**
+     * Transfers a region of the document to the target channel.
+     *
+     * @return the number of bytes transferred
+     */
+    long transferTo(Document document, long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Reconciles the stored content with the documents, after a crash between a commit and the save
+     * of its document. The temporary files are removed and the orphan content is removed or adopted.
+     *
+     * @return the new documents of the adopted content, to be saved
+     */
+    List<Document> recover(List<Document> documents);
+
 }
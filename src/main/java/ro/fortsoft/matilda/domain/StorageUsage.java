@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
+import com.iciql.Iciql.IQIndexes;
+import com.iciql.Iciql.IQTable;
+import com.iciql.Iciql.IndexType;
+import ro.fortsoft.dada.iciql.IciqlEntity;
+
+/**
+ * The number and the total size of the documents of a company for a month.
+ * It's maintained with the documents (see {@link ro.fortsoft.matilda.dao.DocumentDao}), so the usage
+ * of a company is read without loading its documents.
+ *
+ * @author Decebal Suiu
+ */
+@IQTable(inheritColumns = true)
+@IQIndexes({
+    @IQIndex(name = "STORAGEUSAGE_COMPANY_PERIOD", type = IndexType.UNIQUE, value = { "companyId", "year", "month" })
+})
+public class StorageUsage extends IciqlEntity {
+
+    @IQColumn
+    private Long companyId;
+
+    @IQColumn
+    private int year;
+
+    @IQColumn
+    private int month;
+
+    @IQColumn
+    private long documents;
+
+    @IQColumn
+    private long size;
+
+    public StorageUsage() {
+    }
+
+    public StorageUsage(Long id) {
+        super(id);
+    }
+
+    public Long getCompanyId() {
+        return companyId;
+    }
+
+    public StorageUsage setCompanyId(Long companyId) {
+        this.companyId = companyId;
+
+        return this;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public StorageUsage setYear(int year) {
+        this.year = year;
+
+        return this;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public StorageUsage setMonth(int month) {
+        this.month = month;
+
+        return this;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    public StorageUsage setDocuments(long documents) {
+        this.documents = documents;
+
+        return this;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public StorageUsage setSize(long size) {
+        this.size = size;
+
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "StorageUsage{" +
+            "companyId=" + companyId +
+            ", year=" + year +
+            ", month=" + month +
+            ", documents=" + documents +
+            ", size=" + size +
+            '}';
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.domain;
+
+/**
+ * The documents of a company for a month, uploaded by the customer (in) and by the accountant (out).
+ *
+ * @author Decebal Suiu
+ */
+public class UploadStatus {
+
+    private final Company company;
+
+    private DocumentStatistics in;
+    private DocumentStatistics out;
+    private long storedSize;
+
+    public UploadStatus(Company company) {
+        this.company = company;
+    }
+
+    public Company getCompany() {
+        return company;
+    }
+
+    public DocumentStatistics getIn() {
+        return in;
+    }
+
+    public DocumentStatistics getOut() {
+        return out;
+    }
+
+    /**
+     * The size of all the documents of the company, for all the months.
+     */
+    public long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public void add(DocumentStatistics statistics) {
+        if (Document.IN_TYPE.equals(statistics.getType())) {
+            in = statistics;
+        } else if (Document.OUT_TYPE.equals(statistics.getType())) {
+            out = statistics;
+        }
+    }
+
+    /**
+     * The customer has uploaded documents for the month.
+     */
+    public boolean isUploaded() {
+        return (in != null) && (in.getCount() > 0);
+    }
+
+}
@@ -16,7 +16,9 @@
 package ro.fortsoft.matilda.domain;
 
 import com.iciql.Iciql.IQColumn;
+import com.iciql.Iciql.IQIndex;
 import com.iciql.Iciql.IQTable;
+import com.iciql.Iciql.IndexType;
 import ro.fortsoft.dada.iciql.IciqlEntity;
 
 import java.util.Date;
@@ -25,6 +27,7 @@ import java.util.Date;
  * @author Decebal Suiu
  */
 @IQTable(inheritColumns = true)
+@IQIndex(name = "USER_USERNAME", type = IndexType.UNIQUE, value = "username")
 public class User extends IciqlEntity {
 
     @IQColumn
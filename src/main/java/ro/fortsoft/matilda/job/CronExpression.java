@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.job;
+
+import java.time.DayOfWeek;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * A cron expression with five fields: minute, hour, day of month, month and day of week (0 or 7 is Sunday).
+ * A field is "*", a value, a range ("1-5"), a step ("*&#47;15", "0-30/10") or a list of them ("1,15").
+ * Like cron, when both the day of month and the day of week are restricted (they don't start with "*"),
+ * a day matching either is a match.
+ *
+ * @author Decebal Suiu
+ */
+public class CronExpression {
+
+    // a valid expression matches at least once in a few years (e.g. February 29)
+    private static final int MAX_YEARS = 5;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    public CronExpression(String expression) {
+        this.expression = expression;
+
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Invalid cron expression '" + expression + "', it must have 5 fields");
+        }
+
+        minutes = parse(fields[0], 0, 59);
+        hours = parse(fields[1], 0, 23);
+        daysOfMonth = parse(fields[2], 1, 31);
+        months = parse(fields[3], 1, 12);
+        daysOfWeek = parse(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        anyDayOfMonth = fields[2].startsWith("*");
+        anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    /**
+     * Returns the first time after the given time that matches the expression.
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = time.plusYears(MAX_YEARS);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+
+        throw new IllegalArgumentException("Cron expression '" + expression + "' never matches");
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        // Sunday is 7 for DayOfWeek and 0 for cron
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek() == DayOfWeek.SUNDAY ? 0 : time.getDayOfWeek().getValue());
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+
+        return dayOfMonth || dayOfWeek;
+    }
+
+    private BitSet parse(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int index = part.indexOf('/');
+            if (index != -1) {
+                step = parseValue(part.substring(index + 1), 1, max);
+                part = part.substring(0, index);
+            }
+
+            int start;
+            int end;
+            if ("*".equals(part)) {
+                start = min;
+                end = max;
+            } else {
+                index = part.indexOf('-');
+                if (index != -1) {
+                    start = parseValue(part.substring(0, index), min, max);
+                    end = parseValue(part.substring(index + 1), min, max);
+                } else {
+                    start = parseValue(part, min, max);
+                    // "5/15" means from 5 to the end, every 15
+                    end = (step > 1) ? max : start;
+                }
+            }
+
+            if (start > end) {
+                throw new IllegalArgumentException("Invalid range '" + part + "' in cron expression '" + expression + "'");
+            }
+            for (int i = start; i <= end; i += step) {
+                values.set(i);
+            }
+        }
+
+        return values;
+    }
+
+    private int parseValue(String value, int min, int max) {
+        try {
+            int result = Integer.parseInt(value);
+            if ((result < min) || (result > max)) {
+                throw new IllegalArgumentException("Value '" + value + "' is out of range in cron expression '" + expression + "'");
+            }
+
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' in cron expression '" + expression + "'");
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.job;
+
+import ro.fortsoft.matilda.domain.JobState;
+
+/**
+ * Lets a running job report its progress. The state is shown on the admin page while the job runs.
+ *
+ * @author Decebal Suiu
+ */
+public class JobContext {
+
+    private final JobState state;
+
+    JobContext(JobState state) {
+        this.state = state;
+    }
+
+    public String getName() {
+        return state.getName();
+    }
+
+    /**
+     * @param progress the percentage of the work done, from 0 to 100
+     */
+    public void setProgress(int progress) {
+        state.setProgress(Math.max(0, Math.min(progress, 100)));
+    }
+
+    /**
+     * Returns true if the scheduler is shutting down, a long job should stop.
+     */
+    public boolean isInterrupted() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+}
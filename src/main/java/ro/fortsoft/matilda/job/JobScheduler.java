@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.dao.JobStateDao;
+import ro.fortsoft.matilda.domain.JobState;
+import ro.fortsoft.matilda.util.DbUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the background jobs, off the request threads.
+ * A job runs on a named thread pool with a bounded queue, when its {@link Trigger} fires.
+ * A job never runs twice at the same time, a fire during a run is skipped.
+ * The state of each scheduled job is saved in the database: a run missed while the application was stopped
+ * is made at startup and a job interrupted by a stop is marked as such.
+ * A submitted (one-off) job keeps its state only in memory, until it's removed.
+ *
+ * @author Decebal Suiu
+ */
+public class JobScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(JobScheduler.class);
+
+    private static final int QUEUE_SIZE = 100;
+
+    private final JobStateDao jobStateDao;
+    private final Map<String, ThreadPoolExecutor> pools;
+    private final Map<String, ScheduledJob> jobs;
+    private final ScheduledExecutorService timer;
+
+    public JobScheduler(JobStateDao jobStateDao) {
+        this.jobStateDao = jobStateDao;
+
+        pools = new ConcurrentHashMap<>();
+        jobs = new ConcurrentHashMap<>();
+        timer = Executors.newSingleThreadScheduledExecutor(new JobThreadFactory("job-timer"));
+
+        // the jobs that were running when the application stopped
+        DbUtils.runWithDb(db -> {
+            for (JobState state : jobStateDao.findAll()) {
+                if (state.isRunning()) {
+                    log.warn("Job '{}' was interrupted", state.getName());
+                    jobStateDao.save(state.setStatus(JobState.INTERRUPTED).setProgress(0));
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a pool with the given number of threads, for the jobs that must not wait for (or block) other jobs.
+     */
+    public void createPool(String name, int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(QUEUE_SIZE), new JobThreadFactory("job-" + name));
+        if (pools.putIfAbsent(name, pool) != null) {
+            pool.shutdown();
+            throw new IllegalArgumentException("Pool '" + name + "' already exists");
+        }
+        log.debug("Created job pool '{}' with '{}' threads", name, size);
+    }
+
+    /**
+     * Schedules a job. The state saved under the same name is resumed.
+     */
+    public void schedule(String name, String pool, Trigger trigger, Job job) {
+        schedule(name, pool, trigger, job, true);
+    }
+
+    /**
+     * Runs a job once, now. A finished job with the same name is replaced.
+     * Its state is not saved, see {@link #remove(String)}.
+     */
+    public void submit(String name, String pool, Job job) {
+        ScheduledJob existing = jobs.get(name);
+        if (existing != null) {
+            synchronized (existing) {
+                if (!existing.isDone()) {
+                    throw new IllegalStateException("Job '" + name + "' is running");
+                }
+            }
+            jobs.remove(name, existing);
+        }
+
+        schedule(name, pool, Trigger.now(), job, false);
+    }
+
+    /**
+     * Forgets a submitted job that is done. Returns false if the job doesn't exist or it's not done.
+     */
+    public boolean remove(String name) {
+        ScheduledJob job = jobs.get(name);
+        if ((job == null) || job.persistent) {
+            return false;
+        }
+
+        synchronized (job) {
+            if (!job.isDone()) {
+                return false;
+            }
+        }
+
+        return jobs.remove(name, job);
+    }
+
+    /**
+     * Runs a scheduled job now, out of its schedule. Returns false if the job doesn't exist.
+     */
+    public boolean runNow(String name) {
+        ScheduledJob job = jobs.get(name);
+        if (job == null) {
+            return false;
+        }
+
+        timer.execute(() -> fire(job));
+
+        return true;
+    }
+
+    /**
+     * Returns the state of the jobs, by name.
+     */
+    public List<JobState> getJobs() {
+        List<JobState> states = new ArrayList<>();
+        jobs.values().forEach(job -> states.add(job.state));
+        states.sort((first, second) -> first.getName().compareTo(second.getName()));
+
+        return states;
+    }
+
+    public JobState getJob(String name) {
+        ScheduledJob job = jobs.get(name);
+
+        return (job != null) ? job.state : null;
+    }
+
+    public Map<String, PoolStatistics> getPoolStatistics() {
+        Map<String, PoolStatistics> statistics = new LinkedHashMap<>();
+        pools.keySet().stream().sorted().forEach(name -> statistics.put(name, new PoolStatistics(pools.get(name))));
+
+        return statistics;
+    }
+
+    /**
+     * Stops the timer and the pools. The running jobs are interrupted, they are marked at the next start.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        for (ThreadPoolExecutor pool : pools.values()) {
+            pool.shutdownNow();
+        }
+    }
+
+    private void schedule(String name, String pool, Trigger trigger, Job job, boolean persistent) {
+        if (!pools.containsKey(pool)) {
+            throw new IllegalArgumentException("Pool '" + pool + "' doesn't exist");
+        }
+
+        JobState state = persistent ? DbUtils.withDb(db -> jobStateDao.findByName(name)) : null;
+        if (state == null) {
+            state = new JobState().setName(name).setStatus(JobState.SCHEDULED);
+        }
+        state.setPool(pool).setSchedule(trigger.toString());
+
+        ScheduledJob scheduledJob = new ScheduledJob(pool, trigger, job, state, persistent);
+        if (jobs.putIfAbsent(name, scheduledJob) != null) {
+            throw new IllegalArgumentException("Job '" + name + "' already exists");
+        }
+
+        // a job interrupted (or not started) before a stop runs again
+        Instant now = Instant.now();
+        boolean pending = JobState.SCHEDULED.equals(state.getStatus()) || JobState.INTERRUPTED.equals(state.getStatus());
+        Instant last = (pending || (state.getLastStart() == null)) ? null : state.getLastStart().toInstant();
+        Instant next = trigger.next(now, last);
+        if ((next != null) && (state.getNextRun() != null) && state.getNextRun().toInstant().isBefore(next)) {
+            // missed while the application was stopped
+            next = state.getNextRun().toInstant().isBefore(now) ? now : state.getNextRun().toInstant();
+        }
+
+        log.info("Schedule job '{}' ({}) on pool '{}', next run at '{}'", name, trigger, pool, next);
+        scheduleNext(scheduledJob, next);
+    }
+
+    private void scheduleNext(ScheduledJob job, Instant next) {
+        synchronized (job) {
+            if (job.future != null) {
+                job.future.cancel(false);
+                job.future = null;
+            }
+
+            job.state.setNextRun((next != null) ? Date.from(next) : null);
+            if (next != null) {
+                long delay = Math.max(next.toEpochMilli() - System.currentTimeMillis(), 0);
+                job.future = timer.schedule(() -> fire(job), delay, TimeUnit.MILLISECONDS);
+            }
+
+            save(job);
+        }
+    }
+
+    private void fire(ScheduledJob job) {
+        try {
+            pools.get(job.pool).execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            log.warn("Pool '{}' is full, skip the run of job '{}'", job.pool, job.state.getName());
+            synchronized (job) {
+                if (!job.state.isRunning()) {
+                    job.state.setStatus(JobState.FAILED);
+                }
+                job.state.setLastError("Pool '" + job.pool + "' is full");
+            }
+            scheduleNext(job, job.trigger.next(Instant.now(), Instant.now()));
+        }
+    }
+
+    private void run(ScheduledJob job) {
+        JobState state = job.state;
+        Instant start = Instant.now();
+        synchronized (job) {
+            if (state.isRunning()) {
+                log.debug("Job '{}' is running, skip this run", state.getName());
+                return;
+            }
+
+            state.setStatus(JobState.RUNNING)
+                .setLastStart(Date.from(start))
+                .setLastEnd(null)
+                .setLastError(null)
+                .setProgress(0);
+            save(job);
+        }
+
+        log.debug("Run job '{}'", state.getName());
+        Throwable error = DbUtils.withDb(db -> {
+            try {
+                job.job.execute(new JobContext(state));
+
+                return null;
+            } catch (Exception | Error e) {
+                return e;
+            }
+        });
+
+        synchronized (job) {
+            state.setLastEnd(new Date()).setRuns(state.getRuns() + 1);
+            if (error == null) {
+                log.debug("Job '{}' succeeded in '{}' ms", state.getName(), System.currentTimeMillis() - start.toEpochMilli());
+                state.setStatus(JobState.SUCCEEDED).setProgress(100);
+            } else {
+                log.error("Job '{}' failed", state.getName(), error);
+                state.setStatus(JobState.FAILED).setLastError(String.valueOf(error.getMessage()));
+            }
+        }
+
+        scheduleNext(job, job.trigger.next(Instant.now(), start));
+    }
+
+    private void save(ScheduledJob job) {
+        if (!job.persistent) {
+            return;
+        }
+
+        JobState state = job.state;
+        try {
+            DbUtils.runWithDb(db -> jobStateDao.save(state));
+        } catch (RuntimeException e) {
+            // the job runs anyway, only its history is lost
+            log.error("Cannot save the state of job '{}'", state.getName(), e);
+        }
+    }
+
+    private static class ScheduledJob {
+
+        final String pool;
+        final Trigger trigger;
+        final Job job;
+        final JobState state;
+        final boolean persistent;
+
+        ScheduledFuture<?> future;
+
+        ScheduledJob(String pool, Trigger trigger, Job job, JobState state, boolean persistent) {
+            this.pool = pool;
+            this.trigger = trigger;
+            this.job = job;
+            this.state = state;
+            this.persistent = persistent;
+        }
+
+        /**
+         * Returns true if the job is not running and has no run to come.
+         */
+        boolean isDone() {
+            return !state.isRunning() && !JobState.SCHEDULED.equals(state.getStatus()) && ((future == null) || future.isDone());
+        }
+
+    }
+
+    public static class PoolStatistics {
+
+        private final int size;
+        private final int active;
+        private final int queued;
+        private final long completed;
+
+        PoolStatistics(ThreadPoolExecutor pool) {
+            size = pool.getMaximumPoolSize();
+            active = pool.getActiveCount();
+            queued = pool.getQueue().size();
+            completed = pool.getCompletedTaskCount();
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+    }
+
+    private static class JobThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        JobThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.job;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Decides when a job runs.
+ *
+ * @author Decebal Suiu
+ */
+public abstract class Trigger {
+
+    /**
+     * Returns the next run of the job, or null if the job doesn't run again.
+     *
+     * @param now the current time
+     * @param last the start of the last run, null if the job has not run yet
+     */
+    public abstract Instant next(Instant now, Instant last);
+
+    /**
+     * Runs the job once, at the given time.
+     */
+    public static Trigger once(Instant time) {
+        return new Once(time);
+    }
+
+    /**
+     * Runs the job once, now.
+     */
+    public static Trigger now() {
+        return new Once(Instant.now());
+    }
+
+    /**
+     * Runs the job with the given period, the first time after a period.
+     */
+    public static Trigger every(Duration period) {
+        return new Every(period);
+    }
+
+    /**
+     * Runs the job at the times of a cron expression (see {@link CronExpression}), in the default time zone.
+     */
+    public static Trigger cron(String expression) {
+        return new Cron(new CronExpression(expression));
+    }
+
+    private static class Once extends Trigger {
+
+        private final Instant time;
+
+        Once(Instant time) {
+            this.time = time;
+        }
+
+        @Override
+        public Instant next(Instant now, Instant last) {
+            return (last == null) ? time : null;
+        }
+
+        @Override
+        public String toString() {
+            return "once";
+        }
+
+    }
+
+    private static class Every extends Trigger {
+
+        private final Duration period;
+
+        Every(Duration period) {
+            this.period = period;
+        }
+
+        @Override
+        public Instant next(Instant now, Instant last) {
+            return ((last != null) ? last : now).plus(period);
+        }
+
+        @Override
+        public String toString() {
+            return "every " + period;
+        }
+
+    }
+
+    private static class Cron extends Trigger {
+
+        private final CronExpression expression;
+
+        Cron(CronExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public Instant next(Instant now, Instant last) {
+            return expression.next(now.atZone(ZoneId.systemDefault())).toInstant();
+        }
+
+        @Override
+        public String toString() {
+            return expression.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.dada.core.Entity;
+import ro.fortsoft.dada.core.service.BaseEntityService;
+import ro.fortsoft.matilda.dao.BatchEntityDao;
+
+import java.util.Collection;
+
+/**
+ * @author Decebal Suiu
+ */
+public class BaseBatchEntityService<T extends Entity> extends BaseEntityService<T> implements BatchEntityService<T> {
+
+    public BaseBatchEntityService(BatchEntityDao<T> dao) {
+        super(dao);
+    }
+
+    @Override
+    public void saveAll(Collection<T> entities) {
+        if (!entities.isEmpty()) {
+            getDao().saveAll(entities);
+        }
+    }
+
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        return ids.isEmpty() ? 0 : getDao().deleteAll(ids);
+    }
+
+    @Override
+    protected BatchEntityDao<T> getDao() {
+        return (BatchEntityDao<T>) super.getDao();
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.dada.core.Entity;
+import ro.fortsoft.dada.core.service.EntityService;
+
+import java.util.Collection;
+
+/**
+ * A service that writes many entities at once (see {@link ro.fortsoft.matilda.dao.BatchEntityDao}).
+ *
+ * @author Decebal Suiu
+ */
+public interface BatchEntityService<T extends Entity> extends EntityService<T> {
+
+    /**
+     * Saves all the entities at once. The new entities don't get their ids.
+     */
+    void saveAll(Collection<T> entities);
+
+    int deleteAll(Collection<Long> ids);
+
+}
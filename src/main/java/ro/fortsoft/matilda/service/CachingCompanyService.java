@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CachingCompanyService extends CachingEntityService<Company, CompanyService> implements CompanyService {
+
+    public CachingCompanyService(CompanyService service, EntityCache<Company> cache) {
+        super(service, cache);
+    }
+
+    @Override
+    public Company findByFiscalCode(String fiscalCode) {
+        return service.findByFiscalCode(fiscalCode);
+    }
+
+    @Override
+    public List<Company> findByIds(Collection<Long> ids) {
+        return service.findByIds(ids);
+    }
+
+    @Override
+    public Page<Company> findPage(PageRequest request) {
+        return service.findPage(request);
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.CustomerDto;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.List;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CachingCustomerService extends CachingEntityService<Customer, CustomerService> implements CustomerService {
+
+    public CachingCustomerService(CustomerService service, EntityCache<Customer> cache) {
+        super(service, cache);
+    }
+
+    @Override
+    public Customer findByEmail(String email) {
+        return service.findByEmail(email);
+    }
+
+    @Override
+    public List<CustomerDto> findAllWithCompany() {
+        return service.findAllWithCompany();
+    }
+
+    @Override
+    public Page<Customer> findPage(PageRequest request) {
+        return service.findPage(request);
+    }
+
+    @Override
+    public Page<CustomerDto> findPageWithCompany(PageRequest request) {
+        return service.findPageWithCompany(request);
+    }
+
+}
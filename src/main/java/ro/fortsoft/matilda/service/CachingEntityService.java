@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.dada.core.Entity;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Wraps a service and reads the entities by id (and the list of all the entities) through an {@link EntityCache}.
+ * The writes made through this service invalidate the cache, the writes made around it are seen
+ * after the time to live.
+ * The cached entities are shared, they must not be changed without a save.
+ *
+ * @author Decebal Suiu
+ */
+public abstract class CachingEntityService<T extends Entity, S extends BatchEntityService<T>> implements BatchEntityService<T> {
+
+    protected final S service;
+    protected final EntityCache<T> cache;
+
+    public CachingEntityService(S service, EntityCache<T> cache) {
+        this.service = service;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<T> findAll() {
+        return cache.getAll(service::findAll);
+    }
+
+    @Override
+    public T findById(long id) {
+        return cache.get(id, service::findById);
+    }
+
+    @Override
+    public List<T> findByExample(T example) {
+        return service.findByExample(example);
+    }
+
+    @Override
+    public T save(T entity) {
+        try {
+            return service.save(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    @Override
+    public boolean delete(T entity) {
+        try {
+            return service.delete(entity);
+        } finally {
+            invalidate(entity);
+        }
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        try {
+            return service.deleteById(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<T> entities) {
+        try {
+            service.saveAll(entities);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public int deleteAll(Collection<Long> ids) {
+        try {
+            return service.deleteAll(ids);
+        } finally {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public long count() {
+        return service.count();
+    }
+
+    public EntityCache<T> getCache() {
+        return cache;
+    }
+
+    private void invalidate(T entity) {
+        // a new entity has its id after the save
+        if (entity.getId() != null) {
+            cache.invalidate(entity.getId());
+        } else {
+            cache.invalidateAll();
+        }
+    }
+
+}
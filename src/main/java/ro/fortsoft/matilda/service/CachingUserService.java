@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+import ro.fortsoft.matilda.domain.User;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CachingUserService extends CachingEntityService<User, UserService> implements UserService {
+
+    public CachingUserService(UserService service, EntityCache<User> cache) {
+        super(service, cache);
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        return service.findByUsername(username);
+    }
+
+    @Override
+    public Page<User> findPage(PageRequest request) {
+        return service.findPage(request);
+    }
+
+}
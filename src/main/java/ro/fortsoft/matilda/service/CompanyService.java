@@ -15,14 +15,22 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.EntityService;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public interface CompanyService extends EntityService<Company> {
+public interface CompanyService extends BatchEntityService<Company> {
 
     Company findByFiscalCode(String fiscalCode);
 
+    List<Company> findByIds(Collection<Long> ids);
+
+    Page<Company> findPage(PageRequest request);
+
 }
@@ -15,14 +15,30 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.EntityService;
 import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.CustomerDto;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public interface CustomerService extends EntityService<Customer> {
+public interface CustomerService extends BatchEntityService<Customer> {
 
     Customer findByEmail(String email);
 
+    /**
+     * Returns all the customers with their companies.
+     */
+    List<CustomerDto> findAllWithCompany();
+
+    Page<Customer> findPage(PageRequest request);
+
+    /**
+     * Returns a page of customers with their companies.
+     */
+    Page<CustomerDto> findPageWithCompany(PageRequest request);
+
 }
@@ -15,15 +15,19 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.BaseEntityService;
 import ro.fortsoft.matilda.dao.CompanyDao;
 import ro.fortsoft.matilda.dao.IciqlCompanyDao;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public class DefaultCompanyService extends BaseEntityService<Company> implements CompanyService {
+public class DefaultCompanyService extends BaseBatchEntityService<Company> implements CompanyService {
 
     public DefaultCompanyService() {
 //        super(new CsvCompanyDao(defaults));
@@ -35,6 +39,16 @@ public class DefaultCompanyService extends BaseEntityService<Company> implements
         return getDao().findByFiscalCode(fiscalCode);
     }
 
+    @Override
+    public List<Company> findByIds(Collection<Long> ids) {
+        return getDao().findByIds(ids);
+    }
+
+    @Override
+    public Page<Company> findPage(PageRequest request) {
+        return getDao().findPage(request);
+    }
+
     @Override
     protected CompanyDao getDao() {
         return (CompanyDao) super.getDao();
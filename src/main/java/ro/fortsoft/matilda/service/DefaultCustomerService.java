@@ -15,18 +15,32 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.BaseEntityService;
 import ro.fortsoft.matilda.dao.CustomerDao;
 import ro.fortsoft.matilda.dao.IciqlCustomerDao;
+import ro.fortsoft.matilda.domain.Company;
 import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.domain.CustomerDto;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Decebal Suiu
  */
-public class DefaultCustomerService extends BaseEntityService<Customer> implements CustomerService {
+public class DefaultCustomerService extends BaseBatchEntityService<Customer> implements CustomerService {
+
+    private final CompanyService companyService;
 
-    public DefaultCustomerService() {
+    public DefaultCustomerService(CompanyService companyService) {
         super(new IciqlCustomerDao());
+
+        this.companyService = companyService;
     }
 
     @Override
@@ -34,9 +48,50 @@ public class DefaultCustomerService extends BaseEntityService<Customer> implemen
         return getDao().findByEmail(email);
     }
 
+    /**
+     * Two queries, the customers and then their companies (with IN), instead of a query for each customer.
+     */
+    @Override
+    public List<CustomerDto> findAllWithCompany() {
+        return toDtos(findAll());
+    }
+
+    @Override
+    public Page<Customer> findPage(PageRequest request) {
+        return getDao().findPage(request);
+    }
+
+    @Override
+    public Page<CustomerDto> findPageWithCompany(PageRequest request) {
+        Page<Customer> page = findPage(request);
+
+        return new Page<>(toDtos(page.getItems()), page.getNext());
+    }
+
     @Override
     protected CustomerDao getDao() {
         return (CustomerDao) super.getDao();
     }
 
+    private List<CustomerDto> toDtos(List<Customer> customers) {
+        Set<Long> companyIds = new HashSet<>();
+        for (Customer customer : customers) {
+            if (customer.getCompanyId() != null) {
+                companyIds.add(customer.getCompanyId());
+            }
+        }
+
+        Map<Long, Company> companies = new HashMap<>();
+        for (Company company : companyService.findByIds(companyIds)) {
+            companies.put(company.getId(), company);
+        }
+
+        List<CustomerDto> dtos = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            dtos.add(new CustomerDto(customer, companies.get(customer.getCompanyId())));
+        }
+
+        return dtos;
+    }
+
 }
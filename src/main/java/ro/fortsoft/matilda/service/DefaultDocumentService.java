@@ -15,21 +15,60 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.BaseEntityService;
 import ro.fortsoft.matilda.dao.DocumentDao;
 import ro.fortsoft.matilda.dao.IciqlDocumentDao;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public class DefaultDocumentService extends BaseEntityService<Document> implements DocumentService {
+public class DefaultDocumentService extends BaseBatchEntityService<Document> implements DocumentService {
 
     public DefaultDocumentService() {
 //        super(new CsvDocumentDao());
         super(new IciqlDocumentDao());
     }
 
+    @Override
+    public List<Document> findByCompanyAndPeriod(long companyId, YearMonth date, String type) {
+        return getDao().findByCompanyAndPeriod(companyId, date, type);
+    }
+
+    @Override
+    public List<Document> findByPeriod(YearMonth date, String type) {
+        return getDao().findByPeriod(date, type);
+    }
+
+    @Override
+    public List<DocumentStatistics> findStatistics(Long companyId, YearMonth date) {
+        return getDao().findStatistics(companyId, date);
+    }
+
+    @Override
+    public List<StorageUsage> findStorageUsage() {
+        return getDao().getUsageDao().findAll();
+    }
+
+    @Override
+    public List<StorageUsage> findStorageUsage(long companyId) {
+        return getDao().getUsageDao().findByCompany(companyId);
+    }
+
+    @Override
+    public long getStorageUsage(long companyId) {
+        return findStorageUsage(companyId).stream().mapToLong(StorageUsage::getSize).sum();
+    }
+
+    @Override
+    public void rebuildStorageUsage() {
+        getDao().rebuildUsage();
+    }
+
     @Override
     protected DocumentDao getDao() {
         return (DocumentDao) super.getDao();
@@ -15,9 +15,10 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.BaseEntityService;
 import ro.fortsoft.matilda.dao.IciqlUserDao;
 import ro.fortsoft.matilda.dao.UserDao;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.fortsoft.matilda.domain.User;
 
 import java.util.Collections;
@@ -26,7 +27,7 @@ import java.util.List;
 /**
  * @author Decebal Suiu
  */
-public class DefaultUserService extends BaseEntityService<User> implements UserService {
+public class DefaultUserService extends BaseBatchEntityService<User> implements UserService {
 
     public DefaultUserService() {
         this(Collections.emptyList());
@@ -42,6 +43,11 @@ public class DefaultUserService extends BaseEntityService<User> implements UserS
         return getDao().findByUsername(username);
     }
 
+    @Override
+    public Page<User> findPage(PageRequest request) {
+        return getDao().findPage(request);
+    }
+
     @Override
     protected UserDao getDao() {
         return (UserDao) super.getDao();
@@ -15,11 +15,42 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.EntityService;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
+import ro.fortsoft.matilda.domain.StorageUsage;
+
+import java.time.YearMonth;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
  */
-public interface DocumentService extends EntityService<Document> {
+public interface DocumentService extends BatchEntityService<Document> {
+
+    List<Document> findByCompanyAndPeriod(long companyId, YearMonth date, String type);
+
+    /**
+     * See {@link ro.fortsoft.matilda.dao.DocumentDao#findByPeriod(YearMonth, String)}.
+     */
+    List<Document> findByPeriod(YearMonth date, String type);
+
+    /**
+     * See {@link ro.fortsoft.matilda.dao.DocumentDao#findStatistics(Long, YearMonth)}.
+     */
+    List<DocumentStatistics> findStatistics(Long companyId, YearMonth date);
+
+    /**
+     * Returns the storage usage of all the companies, by month.
+     */
+    List<StorageUsage> findStorageUsage();
+
+    List<StorageUsage> findStorageUsage(long companyId);
+
+    /**
+     * Returns the total size of the documents of the company, in bytes.
+     */
+    long getStorageUsage(long companyId);
+
+    void rebuildStorageUsage();
+
 }
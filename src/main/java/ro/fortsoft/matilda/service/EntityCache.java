@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.service;
+
+import ro.fortsoft.dada.core.Entity;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of entities by id, with the least recently used entries evicted first
+ * and each entry expired after a time to live. The list of all the entities is cached as one entry.
+ * A null (missing) entity is not cached.
+ *
+ * @author Decebal Suiu
+ */
+public class EntityCache<T extends Entity> {
+
+    private final int maxSize;
+    private final long timeToLive;
+
+    // access ordered, the eldest is the least recently used
+    private final Map<Long, CachedValue<T>> entries;
+    private CachedValue<List<T>> all;
+    // incremented by each invalidation, a load that started before it is not cached
+    private long generation;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * @param maxSize the maximum number of entities
+     * @param timeToLive in milliseconds
+     */
+    public EntityCache(int maxSize, long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+
+        entries = new LinkedHashMap<Long, CachedValue<T>>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedValue<T>> eldest) {
+                return size() > EntityCache.this.maxSize;
+            }
+
+        };
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached entity or loads it (outside the lock, so a slow load doesn't block the other readers).
+     */
+    public T get(long id, LongFunction<T> loader) {
+        synchronized (this) {
+            CachedValue<T> entry = entries.get(id);
+            if ((entry != null) && !entry.isExpired()) {
+                hits.incrementAndGet();
+
+                return entry.value;
+            }
+        }
+
+        misses.incrementAndGet();
+        long generation = getGeneration();
+        T entity = loader.apply(id);
+        if (entity != null) {
+            synchronized (this) {
+                if (generation == this.generation) {
+                    entries.put(id, new CachedValue<>(entity, timeToLive));
+                }
+            }
+        }
+
+        return entity;
+    }
+
+    public List<T> getAll(Supplier<List<T>> loader) {
+        synchronized (this) {
+            if ((all != null) && !all.isExpired()) {
+                hits.incrementAndGet();
+
+                return all.value;
+            }
+        }
+
+        misses.incrementAndGet();
+        long generation = getGeneration();
+        List<T> entities = loader.get();
+        synchronized (this) {
+            if (generation == this.generation) {
+                all = new CachedValue<>(entities, timeToLive);
+            }
+        }
+
+        return entities;
+    }
+
+    /**
+     * Invalidates the entity and the list of all the entities.
+     */
+    public synchronized void invalidate(long id) {
+        generation++;
+        entries.remove(id);
+        all = null;
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        all = null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" +
+            "size=" + size() +
+            ", maxSize=" + maxSize +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    private static class CachedValue<V> {
+
+        final V value;
+        final long expirationTime;
+
+        CachedValue(V value, long timeToLive) {
+            this.value = value;
+
+            expirationTime = System.currentTimeMillis() + timeToLive;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expirationTime;
+        }
+
+    }
+
+}
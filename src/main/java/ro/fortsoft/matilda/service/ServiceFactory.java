@@ -27,8 +27,32 @@ import java.util.List;
  */
 public class ServiceFactory {
 
-    public CustomerService createCustomerService() {
-        CustomerService customerService = new DefaultCustomerService();
+    private final int cacheSize;
+    private final long cacheTimeToLive;
+
+    /**
+     * Creates services without cache.
+     */
+    public ServiceFactory() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates the company, customer and user services with a cache (see {@link CachingEntityService}).
+     *
+     * @param cacheSize the maximum number of entities cached by each service, 0 for no cache
+     * @param cacheTimeToLive in milliseconds
+     */
+    public ServiceFactory(int cacheSize, long cacheTimeToLive) {
+        this.cacheSize = cacheSize;
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
+    /**
+     * @param companyService the service that reads the companies of the customers
+     */
+    public CustomerService createCustomerService(CompanyService companyService) {
+        CustomerService customerService = new DefaultCustomerService(companyService);
         if (customerService.count() == 0) {
             // add defaults
             List<Customer> defaults = new ArrayList<>();
@@ -50,9 +74,11 @@ public class ServiceFactory {
                 .setFirstName("Maria")
                 .setCompanyId(1L));
 
-            for (Customer customer : defaults) {
-                customerService.save(customer);
-            }
+            customerService.saveAll(defaults);
+        }
+
+        if (cacheSize > 0) {
+            customerService = new CachingCustomerService(customerService, new EntityCache<>(cacheSize, cacheTimeToLive));
         }
 
         return customerService;
@@ -67,9 +93,11 @@ public class ServiceFactory {
                 .setName("decisoft")
                 .setFiscalCode("111111111"));
 
-            for (Company company : defaults) {
-                companyService.save(company);
-            }
+            companyService.saveAll(defaults);
+        }
+
+        if (cacheSize > 0) {
+            companyService = new CachingCompanyService(companyService, new EntityCache<>(cacheSize, cacheTimeToLive));
         }
 
         return companyService;
@@ -84,9 +112,11 @@ public class ServiceFactory {
                 .setUsername("test")
                 .setPassword("1"));
 
-            for (User user : defaults) {
-                userService.save(user);
-            }
+            userService.saveAll(defaults);
+        }
+
+        if (cacheSize > 0) {
+            userService = new CachingUserService(userService, new EntityCache<>(cacheSize, cacheTimeToLive));
         }
 
         return userService;
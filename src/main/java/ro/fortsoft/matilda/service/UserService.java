@@ -15,14 +15,17 @@
  */
 package ro.fortsoft.matilda.service;
 
-import ro.fortsoft.dada.core.service.EntityService;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.fortsoft.matilda.domain.User;
 
 /**
  * @author Decebal Suiu
  */
-public interface UserService extends EntityService<User> {
+public interface UserService extends BatchEntityService<User> {
 
     User findByUsername(String username);
 
+    Page<User> findPage(PageRequest request);
+
 }
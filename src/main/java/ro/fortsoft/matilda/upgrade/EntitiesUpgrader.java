@@ -20,14 +20,14 @@ import com.iciql.DbUpgrader;
 import com.iciql.Iciql;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.dao.IciqlDocumentDao;
 
 /**
  * See http://iciql.com/table_versioning.html
  *
  * @author Decebal Suiu
  */
-//@Iciql.IQVersion(2)
-@Iciql.IQVersion(0)
+@Iciql.IQVersion(7)
 public class EntitiesUpgrader implements DbUpgrader {
 
     private static final Logger log = LoggerFactory.getLogger(EntitiesUpgrader.class);
@@ -38,12 +38,22 @@ public class EntitiesUpgrader implements DbUpgrader {
 
         int currentVersion = fromVersion;
 
+        /*
+         * A table that doesn't exist yet is created later from its model, with all the columns.
+         * The statements are idempotent because the version was not recorded before version 3.
+         */
         boolean upgraded = false;
         if (currentVersion == 0) {
             V1 v1 = db.open(V1.class);
-            v1.updateCompanyTable();
-            v1.updateCustomerTable();
-            v1.updateUserTable();
+            if (hasTable(db, "COMPANY")) {
+                v1.updateCompanyTable();
+            }
+            if (hasTable(db, "CUSTOMER")) {
+                v1.updateCustomerTable();
+            }
+            if (hasTable(db, "USER")) {
+                v1.updateUserTable();
+            }
             currentVersion++;
             log.info("Upgraded database to version '{}'", currentVersion);
             upgraded = true;
@@ -51,7 +61,75 @@ public class EntitiesUpgrader implements DbUpgrader {
 
         if ((currentVersion == 1) && (currentVersion < toVersion)) {
             V2 v2 = db.open(V2.class);
-            v2.updateUserTable();
+            if (hasTable(db, "USER")) {
+                v2.updateUserTable();
+            }
+            currentVersion++;
+            log.info("Upgraded database to version '{}'", currentVersion);
+            upgraded = true;
+        }
+
+        if ((currentVersion == 2) && (currentVersion < toVersion)) {
+            V3 v3 = db.open(V3.class);
+            if (hasTable(db, "DOCUMENT")) {
+                v3.updateDocumentTable();
+            }
+            currentVersion++;
+            log.info("Upgraded database to version '{}'", currentVersion);
+            upgraded = true;
+        }
+
+        if ((currentVersion == 3) && (currentVersion < toVersion)) {
+            V4 v4 = db.open(V4.class);
+            if (hasTable(db, "DOCUMENT")) {
+                v4.createDocumentIndex();
+            }
+            currentVersion++;
+            log.info("Upgraded database to version '{}'", currentVersion);
+            upgraded = true;
+        }
+
+        if ((currentVersion == 4) && (currentVersion < toVersion)) {
+            V5 v5 = db.open(V5.class);
+            if (hasTable(db, "CUSTOMER")) {
+                try {
+                    v5.createCustomerIndex();
+                } catch (RuntimeException e) {
+                    log.warn("Duplicate customer emails, create a non unique index", e);
+                    v5.createNonUniqueCustomerIndex();
+                }
+            }
+            if (hasTable(db, "USER")) {
+                try {
+                    v5.createUserIndex();
+                } catch (RuntimeException e) {
+                    log.warn("Duplicate usernames, create a non unique index", e);
+                    v5.createNonUniqueUserIndex();
+                }
+            }
+            currentVersion++;
+            log.info("Upgraded database to version '{}'", currentVersion);
+            upgraded = true;
+        }
+
+        if ((currentVersion == 5) && (currentVersion < toVersion)) {
+            V6 v6 = db.open(V6.class);
+            if (hasTable(db, "COMPANY")) {
+                v6.createCompanyIndex();
+            }
+            if (hasTable(db, "CUSTOMER")) {
+                v6.createCustomerIndex();
+            }
+            currentVersion++;
+            log.info("Upgraded database to version '{}'", currentVersion);
+            upgraded = true;
+        }
+
+        if ((currentVersion == 6) && (currentVersion < toVersion)) {
+            // the storage usage is counted from the existing documents
+            if (hasTable(db, "DOCUMENT")) {
+                new IciqlDocumentDao(() -> db).rebuildUsage();
+            }
             currentVersion++;
             log.info("Upgraded database to version '{}'", currentVersion);
             upgraded = true;
@@ -67,4 +145,8 @@ public class EntitiesUpgrader implements DbUpgrader {
         return false;
     }
 
+    private boolean hasTable(Db db, String table) {
+        return db.open(Schema.class).countTables(table) > 0;
+    }
+
 }
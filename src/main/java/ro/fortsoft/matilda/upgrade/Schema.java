@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.upgrade;
+
+import com.iciql.Dao;
+
+/**
+ * Queries the schema, a table is created from its model only when it's first used.
+ */
+public interface Schema extends Dao {
+
+    @SqlQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = :table")
+    public long countTables(@Bind("table") String table);
+
+    /**
+     * Returns the database version recorded by iciql (see {@link EntitiesUpgrader}).
+     */
+    @SqlQuery("SELECT VERSION FROM _IQ_VERSIONS WHERE SCHEMANAME = '' AND TABLENAME = ''")
+    public Integer getDatabaseVersion();
+
+}
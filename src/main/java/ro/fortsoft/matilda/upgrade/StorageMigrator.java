@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.upgrade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.domain.ContentAddressedStorage;
+import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.FileSystemStorage;
+import ro.fortsoft.matilda.service.DefaultDocumentService;
+import ro.fortsoft.matilda.service.DocumentService;
+import ro.fortsoft.matilda.util.DbUtils;
+import ro.fortsoft.matilda.util.IoUtils;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Moves the documents from the bucket tree ("companyId/year/month/type/name") of {@link FileSystemStorage}
+ * into {@link ContentAddressedStorage}, in the same base directory.
+ * Run it with the application stopped, before "storage.deduplication" is enabled.
+ * The documents that already have a hash are skipped, so it can be run again after a failure.
+ *
+ * @author Decebal Suiu
+ */
+public class StorageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageMigrator.class);
+
+    public static void main(String[] args) {
+        String baseDirectory = (args.length > 0) ? args[0] : "uploads";
+
+        FileSystemStorage source = new FileSystemStorage(baseDirectory);
+        ContentAddressedStorage target = new ContentAddressedStorage(baseDirectory);
+        DocumentService documentService = new DefaultDocumentService();
+
+        int migrated = 0;
+        int failed = 0;
+        try {
+            for (Document document : documentService.findAll()) {
+                if (document.getHash() != null) {
+                    continue;
+                }
+
+                InputStream stream = source.getStream(document);
+                if (stream == null) {
+                    log.warn("Cannot find the file of document '{}'", document);
+                    failed++;
+                    continue;
+                }
+
+                long size;
+                try {
+                    size = target.store(stream, document);
+                } finally {
+                    IoUtils.close(stream);
+                }
+
+                if (document.getHash() == null) {
+                    log.warn("Cannot migrate document '{}' with size '{}'", document, size);
+                    failed++;
+                    continue;
+                }
+
+                // the row points to the blob before the old file is gone
+                documentService.save(document);
+                source.delete(document);
+                migrated++;
+            }
+        } finally {
+            DbUtils.closeDb();
+        }
+
+        deleteEmptyDirectories(new File(baseDirectory));
+
+        log.info("Migrated '{}' documents, '{}' failed", migrated, failed);
+    }
+
+    private static void deleteEmptyDirectories(File directory) {
+        File[] files = directory.listFiles(File::isDirectory);
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            // keep the blobs (and their tmp directory)
+            if (!"blobs".equals(file.getName())) {
+                deleteEmptyDirectories(file);
+                file.delete(); // fails if not empty
+            }
+        }
+    }
+
+}
@@ -22,13 +22,13 @@ import com.iciql.Dao;
  */
 public interface V1 extends Dao {
 
-    @SqlStatement("ALTER TABLE COMPANY ADD COLUMN CREATEDDATE TIMESTAMP DEFAULT NOW()")
+    @SqlStatement("ALTER TABLE COMPANY ADD COLUMN IF NOT EXISTS CREATEDDATE TIMESTAMP DEFAULT NOW()")
     public void updateCompanyTable();
 
-    @SqlStatement("ALTER TABLE CUSTOMER ADD COLUMN CREATEDDATE TIMESTAMP DEFAULT NOW()")
+    @SqlStatement("ALTER TABLE CUSTOMER ADD COLUMN IF NOT EXISTS CREATEDDATE TIMESTAMP DEFAULT NOW()")
     public void updateCustomerTable();
 
-    @SqlStatement("ALTER TABLE USER ADD COLUMN CREATEDDATE TIMESTAMP DEFAULT NOW()")
+    @SqlStatement("ALTER TABLE USER ADD COLUMN IF NOT EXISTS CREATEDDATE TIMESTAMP DEFAULT NOW()")
     public void updateUserTable();
 
 }
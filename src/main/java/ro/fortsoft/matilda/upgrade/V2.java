@@ -22,7 +22,7 @@ import com.iciql.Dao;
  */
 public interface V2 extends Dao {
 
-    @SqlStatement("ALTER TABLE USER ADD COLUMN DISPLAYNAME VARCHAR DEFAULT 'Daniel'")
+    @SqlStatement("ALTER TABLE USER ADD COLUMN IF NOT EXISTS DISPLAYNAME VARCHAR DEFAULT 'Daniel'")
     public void updateUserTable();
 
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import ro.pippo.core.util.StringUtils;
+
+/**
+ * A single byte range of an HTTP Range header (e.g. "bytes=0-499", "bytes=500-", "bytes=-500").
+ *
+ * See https://tools.ietf.org/html/rfc7233
+ *
+ * @author Decebal Suiu
+ */
+public class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long start;
+    private final long end;
+    private final long totalLength;
+
+    private ByteRange(long start, long end, long totalLength) {
+        this.start = start;
+        this.end = end;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Returns the range requested by the header or null if the whole content must be sent
+     * (no header, an invalid header or multiple ranges, which are not supported).
+     */
+    public static ByteRange parse(String header, long totalLength) {
+        if (StringUtils.isNullOrEmpty(header) || !header.startsWith(BYTES_UNIT) || (header.indexOf(',') != -1)) {
+            return null;
+        }
+
+        String range = header.substring(BYTES_UNIT.length()).trim();
+        int index = range.indexOf('-');
+        if (index == -1) {
+            return null;
+        }
+
+        try {
+            String first = range.substring(0, index).trim();
+            String last = range.substring(index + 1).trim();
+
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // suffix range, the last n bytes (zero bytes can't be satisfied)
+                long suffixLength = Long.parseLong(last);
+                start = (suffixLength > 0) ? Math.max(totalLength - suffixLength, 0) : totalLength;
+                end = totalLength - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = totalLength - 1;
+                } else {
+                    end = Long.parseLong(last);
+                    if (end < start) {
+                        // invalid range, ignore it
+                        return null;
+                    }
+                    end = Math.min(end, totalLength - 1);
+                }
+            }
+
+            return new ByteRange(start, end, totalLength);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A range that starts after the end of the content can't be satisfied (416).
+     */
+    public boolean isSatisfiable() {
+        return (start < totalLength) && (start <= end);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Returns the value of the Content-Range header.
+     */
+    public String getContentRange() {
+        if (!isSatisfiable()) {
+            return "bytes */" + totalLength;
+        }
+
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange{" +
+            "start=" + start +
+            ", end=" + end +
+            ", totalLength=" + totalLength +
+            '}';
+    }
+
+}
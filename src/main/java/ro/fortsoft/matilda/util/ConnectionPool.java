@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded pool of JDBC connections, that can be observed: the active, idle and waiting counts,
+ * a histogram of the time spent to get a connection and a leak detector.
+ * A connection kept longer than the leak threshold is logged with the stack trace of the code that took it
+ * (for an iciql Db, where the Db was opened).
+ *
+ * @author Decebal Suiu
+ */
+public class ConnectionPool implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+    // the upper bounds (in milliseconds) of the buckets of the acquisition time histogram, the last bucket is unbounded
+    private static final long[] LATENCY_BUCKETS = { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long timeout;
+    private final int validationTimeout;
+    private final long leakThreshold;
+
+    private final Semaphore permits;
+    private final Deque<Connection> idleConnections;
+    private final Set<Lease> leases;
+    private final AtomicInteger waiting;
+    private final AtomicLongArray latencies;
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean disposed;
+
+    /**
+     * @param maxSize the maximum number of connections
+     * @param timeout the maximum time (in milliseconds) to wait for a free connection
+     * @param validationTimeout the time (in seconds) to check that an idle connection is still valid, 0 for no check
+     * @param leakThreshold the time (in milliseconds) after which a connection that was not returned is reported, 0 for no check
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, long timeout, int validationTimeout, long leakThreshold) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.timeout = timeout;
+        this.validationTimeout = validationTimeout;
+        this.leakThreshold = leakThreshold;
+
+        permits = new Semaphore(maxSize, true);
+        idleConnections = new ArrayDeque<>();
+        leases = ConcurrentHashMap.newKeySet();
+        waiting = new AtomicInteger();
+        latencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+        if (leakThreshold > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-leak-detector");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            long period = Math.max(leakThreshold / 2, 1000);
+            leakDetector.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkDisposed();
+        long start = System.nanoTime();
+
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                log.warn("Timeout waiting for a connection: {}", getStatistics());
+                throw new SQLTimeoutException("Timeout waiting for a connection after " + timeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        Connection connection;
+        try {
+            // it could be disposed while the caller waited
+            checkDisposed();
+            connection = takeConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        Lease lease = new Lease(connection);
+        leases.add(lease);
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, lease);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool has its own credentials");
+    }
+
+    public Statistics getStatistics() {
+        long[] histogram = new long[latencies.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencies.get(i);
+        }
+
+        synchronized (idleConnections) {
+            return new Statistics(maxSize, leases.size(), idleConnections.size(), waiting.get(), histogram);
+        }
+    }
+
+    /**
+     * Closes the idle connections and stops the leak detector. The active connections are closed when they are returned.
+     * A disposed pool gives no connection.
+     */
+    public void dispose() {
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+
+        synchronized (idleConnections) {
+            disposed = true;
+            for (Connection connection : idleConnections) {
+                closeQuietly(connection);
+            }
+            idleConnections.clear();
+        }
+    }
+
+    private void checkDisposed() throws SQLException {
+        if (disposed) {
+            throw new SQLException("The connection pool is disposed");
+        }
+    }
+
+    private Connection takeConnection() throws SQLException {
+        while (true) {
+            Connection connection;
+            synchronized (idleConnections) {
+                connection = idleConnections.pollFirst();
+            }
+
+            if (connection == null) {
+                return DriverManager.getConnection(url, username, password);
+            }
+
+            if ((validationTimeout == 0) || connection.isValid(validationTimeout)) {
+                return connection;
+            }
+
+            log.debug("Discard invalid connection");
+            closeQuietly(connection);
+        }
+    }
+
+    private void release(Lease lease) {
+        if (!leases.remove(lease)) {
+            // closed twice
+            return;
+        }
+
+        Connection connection = lease.connection;
+        try {
+            // like a new connection, the transaction of the previous user is not left open
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            synchronized (idleConnections) {
+                if (disposed) {
+                    closeQuietly(connection);
+                } else {
+                    idleConnections.addFirst(connection);
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("Discard broken connection", e);
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases) {
+            if (!lease.reported && (now - lease.acquireTime > leakThreshold)) {
+                lease.reported = true;
+                log.warn("Connection taken by thread '{}' not returned after {} ms", lease.threadName, now - lease.acquireTime, lease.origin);
+            }
+        }
+    }
+
+    private void recordLatency(long millis) {
+        int bucket = 0;
+        while ((bucket < LATENCY_BUCKETS.length) && (millis > LATENCY_BUCKETS[bucket])) {
+            bucket++;
+        }
+        latencies.incrementAndGet(bucket);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return (int) TimeUnit.MILLISECONDS.toSeconds(timeout);
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A snapshot of the pool.
+     */
+    public static class Statistics {
+
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final int waiting;
+        private final long[] acquisitionTimes;
+
+        Statistics(int maxSize, int active, int idle, int waiting, long[] acquisitionTimes) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.acquisitionTimes = acquisitionTimes;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * Returns the number of connections acquired in each time bucket ("<=1ms", ..., ">5000ms").
+         */
+        public Map<String, Long> getAcquisitionTimes() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                histogram.put("<=" + LATENCY_BUCKETS[i] + "ms", acquisitionTimes[i]);
+            }
+            histogram.put(">" + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1] + "ms", acquisitionTimes[LATENCY_BUCKETS.length]);
+
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                "maxSize=" + maxSize +
+                ", active=" + active +
+                ", idle=" + idle +
+                ", waiting=" + waiting +
+                ", acquisitionTimes=" + getAcquisitionTimes() +
+                '}';
+        }
+
+    }
+
+    /**
+     * A connection handed out by the pool. The proxy returns the connection to the pool on close.
+     */
+    private class Lease implements InvocationHandler {
+
+        final Connection connection;
+        final long acquireTime;
+        final String threadName;
+        // where the connection was taken, for the leak detector
+        final Throwable origin;
+
+        volatile boolean closed;
+        volatile boolean reported;
+
+        Lease(Connection connection) {
+            this.connection = connection;
+
+            acquireTime = System.currentTimeMillis();
+            threadName = Thread.currentThread().getName();
+            origin = (leakThreshold > 0) ? new Throwable("Connection taken here") : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (reported) {
+                            log.info("Connection taken by thread '{}' returned after {} ms", threadName, System.currentTimeMillis() - acquireTime);
+                        }
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + connection;
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection is closed");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+    }
+
+}
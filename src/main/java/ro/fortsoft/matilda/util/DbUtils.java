@@ -16,14 +16,20 @@
 package ro.fortsoft.matilda.util;
 
 import com.iciql.Db;
-import org.h2.jdbcx.JdbcConnectionPool;
+import com.iciql.Iciql;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.matilda.domain.Company;
 import ro.fortsoft.matilda.upgrade.EntitiesUpgrader;
+import ro.fortsoft.matilda.upgrade.Schema;
+import ro.pippo.core.PippoRuntimeException;
+import ro.pippo.core.PippoSettings;
 import ro.pippo.core.route.RouteContext;
 import ro.pippo.core.route.RouteDispatcher;
 
-import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author Decebal Suiu
@@ -32,30 +38,117 @@ public class DbUtils {
 
     private static final Logger log = LoggerFactory.getLogger(DbUtils.class);
 
-//    private static final String url = "jdbc:h2:mem:matilda";
-    private static final String url = "jdbc:h2:./data/matilda";
-    private static final String username = "";
-    private static final String password = "";
+//    private static final String DEFAULT_URL = "jdbc:h2:mem:matilda";
+    private static final String DEFAULT_URL = "jdbc:h2:./data/matilda";
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final long DEFAULT_TIMEOUT = 30; // seconds
+    private static final long DEFAULT_LEAK_THRESHOLD = 60; // seconds
+
+    private static ConnectionPool dataSource;
+    // the Db of a thread that is not serving a request, never shared with other threads
+    private static final ThreadLocal<Db> threadDb = new ThreadLocal<>();
+    // the version of the schema after the migration, -1 if the migration didn't run
+    private static volatile int schemaVersion = -1;
+
+    /**
+     * Creates the connection pool from the "db.*" settings.
+     * Without it (e.g. in a command line tool), the first Db uses a pool with the default settings.
+     */
+    public static synchronized void init(PippoSettings settings) {
+        if (dataSource != null) {
+            dataSource.dispose();
+        }
+
+        String url = settings.getString("db.url", DEFAULT_URL);
+        String username = settings.getString("db.username", "");
+        String password = settings.getString("db.password", "");
+        int maxSize = settings.getInteger("db.pool.maxSize", DEFAULT_MAX_SIZE);
+        long timeout = TimeUnit.SECONDS.toMillis(settings.getLong("db.pool.timeout", DEFAULT_TIMEOUT));
+        int validationTimeout = settings.getInteger("db.pool.validationTimeout", 0);
+        long leakThreshold = TimeUnit.SECONDS.toMillis(settings.getLong("db.pool.leakThreshold", DEFAULT_LEAK_THRESHOLD));
+
+        log.info("Create connection pool for '{}' with maximum '{}' connections", url, maxSize);
+        dataSource = new ConnectionPool(url, username, password, maxSize, timeout, validationTimeout, leakThreshold);
+    }
+
+    public static synchronized ConnectionPool getDataSource() {
+        if (dataSource == null) {
+            dataSource = new ConnectionPool(DEFAULT_URL, "", "", DEFAULT_MAX_SIZE, TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT),
+                0, TimeUnit.SECONDS.toMillis(DEFAULT_LEAK_THRESHOLD));
+        }
+
+        return dataSource;
+    }
+
+    public static ConnectionPool.Statistics getPoolStatistics() {
+        return getDataSource().getStatistics();
+    }
+
+    public static synchronized void destroy() {
+        if (dataSource != null) {
+            dataSource.dispose();
+            dataSource = null;
+        }
+    }
+
+    /**
+     * Upgrades the schema with {@link EntitiesUpgrader}, once. It runs at startup, the Db instances
+     * opened later don't check the version. A failed migration stops the application.
+     */
+    public static synchronized void migrate() {
+        if (schemaVersion != -1) {
+            return;
+        }
+
+        int targetVersion = EntitiesUpgrader.class.getAnnotation(Iciql.IQVersion.class).value();
+        int version;
+        Db db = Db.open(getDataSource());
+        try {
+            db.setDbUpgrader(new EntitiesUpgrader());
+            // iciql runs the upgrader when the first model is defined, the raw queries don't define models
+            db.from(new Company()).selectCount();
+            Integer databaseVersion = db.open(Schema.class).getDatabaseVersion();
+            version = (databaseVersion != null) ? databaseVersion : 0;
+        } catch (RuntimeException e) {
+            throw new PippoRuntimeException(e, "Cannot migrate the database to version '{}'", targetVersion);
+        } finally {
+            db.close();
+        }
+
+        if (version < targetVersion) {
+            throw new PippoRuntimeException("Cannot migrate the database from version '{}' to version '{}'", version, targetVersion);
+        } else if (version > targetVersion) {
+            log.warn("The database version '{}' is newer than the application version '{}'", version, targetVersion);
+        }
 
-    private static DataSource dataSource;
-    private static Db genericDb;
+        log.info("Database version is '{}'", version);
+        schemaVersion = version;
+    }
 
-    static {
-        dataSource = JdbcConnectionPool.create(url, username, password);
+    public static int getSchemaVersion() {
+        return schemaVersion;
     }
 
+    /**
+     * Returns the Db of the current thread (see {@link #withDb(Function)}) or of the current request.
+     * A thread outside of a request and outside of withDb gets its own Db, kept until {@link #closeDb()}.
+     */
     public static Db getDb() {
+        Db db = threadDb.get();
+        if (db != null) {
+            return db;
+        }
+
         RouteContext routeContext = getRouteContext();
         if (routeContext == null) {
-            if (genericDb == null) {
-                log.debug("Create generic Db instance");
-                genericDb = createDb();
-            }
+            log.debug("Create Db instance for thread '{}'", Thread.currentThread().getName());
+            db = createDb();
+            threadDb.set(db);
 
-            return genericDb;
+            return db;
         }
 
-        Db db = routeContext.getLocal("db");
+        db = routeContext.getLocal("db");
         if (db == null) {
             log.debug("Create request Db instance");
             db = createDb();
@@ -65,12 +158,44 @@ public class DbUtils {
         return db;
     }
 
+    /**
+     * Runs the function with a Db (a pooled connection) bound to the current thread,
+     * so the daos called by the function share it. The Db is closed at the end.
+     * Use it for the work outside of a request (executors, jobs, tools).
+     * A nested call uses the Db of the outer call.
+     */
+    public static <T> T withDb(Function<Db, T> function) {
+        Db db = threadDb.get();
+        if (db != null) {
+            return function.apply(db);
+        }
+
+        db = createDb();
+        threadDb.set(db);
+        try {
+            return function.apply(db);
+        } finally {
+            threadDb.remove();
+            db.close();
+        }
+    }
+
+    public static void runWithDb(Consumer<Db> consumer) {
+        withDb(db -> {
+            consumer.accept(db);
+
+            return null;
+        });
+    }
+
     public static void closeDb() {
         RouteContext routeContext = getRouteContext();
         if (routeContext == null) {
-            if (genericDb != null) {
-                log.debug("Close generic Db instance");
-                genericDb.close();
+            Db db = threadDb.get();
+            if (db != null) {
+                log.debug("Close Db instance for thread '{}'", Thread.currentThread().getName());
+                threadDb.remove();
+                db.close();
             }
         } else {
             Db db = routeContext.removeLocal("db");
@@ -86,10 +211,12 @@ public class DbUtils {
     }
 
     private static Db createDb() {
-        Db db = Db.open(dataSource);
-        db.setDbUpgrader(new EntitiesUpgrader());
+        // a command line tool doesn't call migrate
+        if (schemaVersion == -1) {
+            migrate();
+        }
 
-        return db;
+        return Db.open(getDataSource());
     }
 
 }
@@ -45,4 +45,23 @@ public class FileUtils {
         return "";
     }
 
+    /**
+     * Returns the base name of a file name sent by a client, without the directories and the control characters.
+     * Returns null if nothing is left (e.g. "..").
+     */
+    public static String getSafeName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        // a Windows browser can send the full path
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        name = name.replaceAll("\\p{Cntrl}", "").trim();
+        if (name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+            return null;
+        }
+
+        return name;
+    }
+
 }
@@ -21,12 +21,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * @author Decebal Suiu
  */
 public class IoUtils {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Copies all data from an InputStream to an OutputStream.
      *
@@ -34,7 +38,7 @@ public class IoUtils {
      * @throws java.io.IOException if an I/O error occurs
      */
     public static long copy(InputStream input, OutputStream output) throws IOException {
-        byte buffer[] = new byte[2 * 1024];
+        byte buffer[] = new byte[BUFFER_SIZE];
         long total = 0;
         int count;
         while ((count = input.read(buffer)) != -1) {
@@ -54,6 +58,32 @@ public class IoUtils {
         }
     }
 
+    /**
+     * Copies all data from an InputStream to a file and forces the file content to the disk.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copyAndSync(InputStream input, File file) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            long count = copy(input, output);
+            output.getFD().sync();
+
+            return count;
+        } finally {
+            close(output);
+        }
+    }
+
+    /**
+     * Forces the content of the file, written by someone else, to the disk.
+     */
+    public static void sync(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
     /**
      * Silently closes a Closeable.
      *
@@ -18,6 +18,9 @@ package ro.fortsoft.matilda.util;
 import ro.pippo.core.Request;
 import ro.pippo.core.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+
 /**
  * @author Decebal Suiu
  */
@@ -38,4 +41,41 @@ public class NetUtils {
         return remoteHost;
     }
 
+    /**
+     * Returns the value of a Content-Disposition header (e.g. "inline", "attachment") for a file name.
+     * The name goes in "filename*" (RFC 5987), UTF-8 and percent encoded, and in "filename"
+     * without diacritics, for the old clients.
+     *
+     * See https://tools.ietf.org/html/rfc6266
+     */
+    public static String getContentDisposition(String type, String fileName) {
+        // "ă" becomes "a" and the other characters that don't fit in a quoted ASCII string become "_"
+        String asciiName = Normalizer.normalize(fileName, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        StringBuilder fallback = new StringBuilder(asciiName.length());
+        for (char c : asciiName.toCharArray()) {
+            fallback.append(((c < 0x20) || (c > 0x7E) || (c == '"') || (c == '\\')) ? '_' : c);
+        }
+
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : fileName.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (isAttrChar(c)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%')
+                    .append(Character.toUpperCase(Character.forDigit((c >> 4) & 0xF, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+
+        return type + "; filename=\"" + fallback + "\"; filename*=UTF-8''" + encoded;
+    }
+
+    private static boolean isAttrChar(char c) {
+        return ((c >= 'a') && (c <= 'z'))
+            || ((c >= 'A') && (c <= 'Z'))
+            || ((c >= '0') && (c <= '9'))
+            || ("!#$&+-.^_`|~".indexOf(c) != -1);
+    }
+
 }
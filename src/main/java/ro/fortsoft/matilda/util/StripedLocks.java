@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+/**
+ * A fixed set of locks shared by keys (striping), so that the operations on the same key are serialized
+ * and the operations on different keys run in parallel most of the time, without a lock per key.
+ *
+ * @author Decebal Suiu
+ */
+public class StripedLocks {
+
+    private final Object[] locks;
+
+    public StripedLocks(int count) {
+        locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public Object get(Object key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import ro.fortsoft.matilda.domain.UploadResult;
+import ro.pippo.core.FileItem;
+import ro.pippo.core.PippoRuntimeException;
+import ro.pippo.core.Request;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Part;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Decebal Suiu
+ */
+public class UploadUtils {
+
+    /**
+     * Returns all the files with the given name ({@link Request#getFile(String)} returns only one).
+     */
+    public static List<FileItem> getFiles(Request request, String name) {
+        List<FileItem> files = new ArrayList<>();
+        try {
+            for (Part part : request.getHttpServletRequest().getParts()) {
+                if (name.equals(part.getName()) && (part.getSubmittedFileName() != null)) {
+                    files.add(new FileItem(part));
+                }
+            }
+        } catch (IOException | ServletException e) {
+            throw new PippoRuntimeException(e);
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns the response of a batch upload, with the result of each file.
+     * The widget expects an "error" (see http://plugins.krajee.com/file-input#ajax-uploads).
+     */
+    public static Map<String, Object> toResponse(List<UploadResult> results) {
+        List<String> failed = new ArrayList<>();
+        for (UploadResult result : results) {
+            if (result.getError() != null) {
+                failed.add(result.getName());
+            }
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("files", results);
+        if (!failed.isEmpty()) {
+            response.put("error", "Cannot upload " + String.join(", ", failed));
+        }
+
+        return response;
+    }
+
+}
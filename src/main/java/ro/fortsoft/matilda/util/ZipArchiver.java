@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Zips entries directly into an output stream.
+ * The entries that are already compressed (PDF, JPEG, ...) are not compressed again and the others
+ * are deflated in parallel on a bounded fork-join pool, shared by all the archives.
+ * The stream of each entry is read once. The small entries are prepared in memory, within a budget
+ * shared by all the archives; when it's spent an entry is compressed while it's written.
+ * The entries are written in order, while the next ones are prepared, so only a few streams
+ * are open at a time. The archive switches to Zip64 when it gets too big for the classic format.
+ *
+ * @author Decebal Suiu
+ */
+public class ZipArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipArchiver.class);
+
+    /**
+     * Entries bigger than this are deflated while they are written, instead of in memory.
+     * A big entry that is already compressed is written with deflate level 0 (not stored),
+     * so its CRC can follow the data and the stream is not read twice.
+     */
+    private static final long MAX_BUFFERED_SIZE = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Content types (or prefixes) that don't gain anything from compression.
+     */
+    private static final List<String> COMPRESSED_CONTENT_TYPES = Arrays.asList(
+        "application/pdf",
+        "application/zip",
+        "application/gnutar",
+        "application/x-gzip",
+        "application/x-compressed",
+        "application/x-bzip",
+        "application/x-bzip2",
+        "application/x-7z-compressed",
+        "application/x-rar-compressed",
+        "application/vnd.openxmlformats-officedocument.",
+        "application/vnd.oasis.opendocument.",
+        "image/jpeg",
+        "image/png",
+        "image/gif",
+        "audio/",
+        "video/"
+    );
+
+    private final ForkJoinPool pool;
+    private final int compressionLevel;
+    // the bytes that all the archives can keep in memory
+    private final Semaphore bufferBudget;
+
+    public ZipArchiver(int parallelism, int compressionLevel) {
+        this(parallelism, compressionLevel, parallelism * MAX_BUFFERED_SIZE);
+    }
+
+    /**
+     * @param maxBufferedBytes the bytes of the prepared entries that all the archives can keep in memory
+     */
+    public ZipArchiver(int parallelism, int compressionLevel, long maxBufferedBytes) {
+        this.compressionLevel = compressionLevel;
+
+        pool = new ForkJoinPool(parallelism);
+        bufferBudget = new Semaphore((int) Math.min(maxBufferedBytes, Integer.MAX_VALUE));
+        log.debug("Created zip archiver with parallelism '{}', compression level '{}' and buffer budget '{}'",
+            parallelism, compressionLevel, maxBufferedBytes);
+    }
+
+    /**
+     * Zips the given entries directly into the output stream.
+     * The stream of an entry is opened only while the entry is prepared or written.
+     * Entries with the same name are kept, the duplicates are renamed (e.g. "invoice (1).pdf").
+     * The output stream is flushed but not closed, so it can be the response stream.
+     */
+    public void zip(Iterator<? extends Entry> entries, OutputStream output) throws IOException {
+        zip(entries, output, null);
+    }
+
+    /**
+     * Like {@link #zip(Iterator, OutputStream)}, the listener is told about each entry written.
+     */
+    public void zip(Iterator<? extends Entry> entries, OutputStream output, Listener listener) throws IOException {
+        ZipWriter writer = new ZipWriter(new BufferedOutputStream(output, BUFFER_SIZE));
+        Set<String> names = new HashSet<>();
+
+        // the entries prepared in parallel, in the order they must be written
+        Deque<PreparedEntry> window = new ArrayDeque<>();
+        try {
+            while (entries.hasNext()) {
+                if (window.size() >= pool.getParallelism()) {
+                    write(window.poll(), writer, listener);
+                }
+
+                Entry entry = entries.next();
+                PreparedEntry prepared = new PreparedEntry(entry, ZipUtils.getUniqueName(entry.getName(), names));
+                // an entry that doesn't get its bytes from the budget is not buffered
+                long size = entry.getSize();
+                if ((size >= 0) && (size <= MAX_BUFFERED_SIZE) && bufferBudget.tryAcquire((int) size)) {
+                    prepared.permits = (int) size;
+                }
+                window.add(prepared);
+                prepared.task = pool.submit(() -> prepare(prepared));
+            }
+
+            while (!window.isEmpty()) {
+                write(window.poll(), writer, listener);
+            }
+
+            writer.finish();
+        } finally {
+            for (PreparedEntry prepared : window) {
+                prepared.task.cancel(true);
+                bufferBudget.release(prepared.permits);
+            }
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        for (String compressedContentType : COMPRESSED_CONTENT_TYPES) {
+            if (contentType.startsWith(compressedContentType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Runs on the pool. It reads in memory a small entry, deflated or (if it's already compressed) stored.
+     */
+    private PreparedEntry prepare(PreparedEntry prepared) throws IOException {
+        Entry entry = prepared.entry;
+        String name = prepared.name;
+
+        boolean compressed = isCompressed(entry.getContentType());
+        long size = entry.getSize();
+        if (prepared.permits == 0) {
+            // deflate it while it's written
+            prepared.method = ZipEntry.DEFLATED;
+            prepared.level = compressed ? Deflater.NO_COMPRESSION : compressionLevel;
+
+            return prepared;
+        }
+        prepared.method = compressed ? ZipEntry.STORED : ZipEntry.DEFLATED;
+
+        try (InputStream input = entry.getStream()) {
+            if (input == null) {
+                log.warn("Cannot open entry '{}', skip it", name);
+                prepared.skip = true;
+
+                return prepared;
+            }
+
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            if (prepared.method == ZipEntry.STORED) {
+                ByteArrayOutputStream data = new ByteArrayOutputStream((int) size);
+                int length;
+                while ((length = input.read(buffer)) != -1) {
+                    crc.update(buffer, 0, length);
+                    data.write(buffer, 0, length);
+                    prepared.size += length;
+                }
+                prepared.data = data.toByteArray();
+            } else {
+                Deflater deflater = new Deflater(compressionLevel, true);
+                ByteArrayOutputStream data = new ByteArrayOutputStream((int) entry.getSize() / 2 + 64);
+                try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(data, deflater, BUFFER_SIZE)) {
+                    int length;
+                    while ((length = input.read(buffer)) != -1) {
+                        crc.update(buffer, 0, length);
+                        deflaterStream.write(buffer, 0, length);
+                        prepared.size += length;
+                    }
+                } finally {
+                    deflater.end();
+                }
+                prepared.data = data.toByteArray();
+            }
+            prepared.crc = crc.getValue();
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Runs on the calling thread, in the order of the entries.
+     */
+    private void write(PreparedEntry prepared, ZipWriter writer, Listener listener) throws IOException {
+        try {
+            join(prepared.task);
+            if (prepared.skip) {
+                return;
+            }
+
+            write(prepared, writer);
+        } finally {
+            prepared.data = null;
+            bufferBudget.release(prepared.permits);
+        }
+
+        if (listener != null) {
+            listener.entryWritten(prepared.name, writer.getWritten());
+        }
+    }
+
+    private void write(PreparedEntry prepared, ZipWriter writer) throws IOException {
+
+        if (prepared.data != null) {
+            writer.writeEntry(prepared.name, prepared.method, prepared.crc, prepared.size, prepared.data, prepared.data.length);
+            return;
+        }
+
+        try (InputStream input = prepared.entry.getStream()) {
+            if (input == null) {
+                throw new IOException("Cannot open entry '" + prepared.name + "'");
+            }
+
+            Deflater deflater = new Deflater(prepared.level, true);
+            try {
+                writer.writeDeflatedEntry(prepared.name, input, deflater, prepared.entry.getSize());
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private PreparedEntry join(ForkJoinTask<PreparedEntry> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * An entry of the archive. The stream is opened only when it's needed.
+     */
+    public interface Entry {
+
+        String getName();
+
+        String getContentType();
+
+        /**
+         * Returns the size of the entry or -1 if it's not known.
+         */
+        long getSize();
+
+        InputStream getStream();
+
+    }
+
+    /**
+     * Follows the progress of an archive.
+     */
+    public interface Listener {
+
+        /**
+         * @param written the bytes of the archive written so far
+         */
+        void entryWritten(String name, long written);
+
+    }
+
+    private static class PreparedEntry {
+
+        final Entry entry;
+        final String name;
+
+        ForkJoinTask<PreparedEntry> task;
+        // the bytes taken from the buffer budget, 0 if the entry is not buffered
+        int permits;
+
+        int method;
+        int level;
+        long crc;
+        long size;
+        byte[] data;
+        boolean skip;
+
+        PreparedEntry(Entry entry, String name) {
+            this.entry = entry;
+            this.name = name;
+        }
+
+    }
+
+}
@@ -15,13 +15,7 @@
  */
 package ro.fortsoft.matilda.util;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Set;
 
 /**
  * @author Decebal Suiu
@@ -29,37 +23,22 @@ import java.util.zip.ZipOutputStream;
 public class ZipUtils {
 
     /**
-     * Zips every file in and under the given directory.
+     * Returns the name or, if it's already used, the name with a counter (e.g. "invoice (1).pdf").
+     * The returned name is added to the used names.
      */
-    public static File zip(String zipFileName, Map<String, InputStream> entries) throws IOException {
-        // create byte buffer
-        byte[] buffer = new byte[1024];
+    public static String getUniqueName(String name, Set<String> names) {
+        String uniqueName = name;
 
-        File zipFile = new File(zipFileName);
-        FileOutputStream fos = new FileOutputStream(zipFile);
-        ZipOutputStream zos = new ZipOutputStream(fos);
+        int index = name.lastIndexOf('.');
+        String baseName = (index > 0) ? name.substring(0, index) : name;
+        String extension = (index > 0) ? name.substring(index) : "";
 
-        for (Map.Entry<String, InputStream> entry : entries.entrySet()) {
-            // begin writing a new ZIP entry, positions the stream to the start of the entry data
-            zos.putNextEntry(new ZipEntry(entry.getKey()));
-
-            InputStream input = entry.getValue();
-
-            int length;
-            while ((length = input.read(buffer)) > 0) {
-                zos.write(buffer, 0, length);
-            }
-
-            zos.closeEntry();
-
-            // close the InputStream
-            input.close();
+        int counter = 1;
+        while (!names.add(uniqueName)) {
+            uniqueName = baseName + " (" + counter++ + ")" + extension;
         }
 
-        // close the ZipOutputStream
-        zos.close();
-
-        return zipFile;
+        return uniqueName;
     }
 
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes the records of a zip archive to an output stream.
+ * Unlike {@link java.util.zip.ZipOutputStream} it accepts entries that are already deflated,
+ * so the compression can happen on other threads. Zip64 extensions are written only when
+ * a size, an offset or the number of entries doesn't fit in the classic format.
+ *
+ * See https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT
+ *
+ * @author Decebal Suiu
+ */
+class ZipWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream output;
+    private final int dosTime;
+    private final List<Record> records;
+    private final byte[] scratch;
+    private final byte[] buffer;
+
+    private long written;
+
+    ZipWriter(OutputStream output) {
+        this.output = output;
+
+        dosTime = toDosTime(LocalDateTime.now());
+        records = new ArrayList<>();
+        scratch = new byte[8];
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Writes an entry whose data is ready (stored or deflated) in memory.
+     */
+    void writeEntry(String name, int method, long crc, long size, byte[] data, int length) throws IOException {
+        Record record = new Record(name, method, 0);
+        record.crc = crc;
+        record.size = size;
+        record.compressedSize = length;
+        record.zip64Local = isZip64(size, length);
+
+        writeLocalHeader(record);
+        write(data, 0, length);
+    }
+
+    /**
+     * Deflates the input stream while it's written. The CRC and the sizes follow the data in a data descriptor.
+     * The size hint decides if the local header carries the Zip64 extra field.
+     */
+    void writeDeflatedEntry(String name, InputStream input, Deflater deflater, long sizeHint) throws IOException {
+        Record record = new Record(name, ZipEntry.DEFLATED, FLAG_DATA_DESCRIPTOR);
+        record.zip64Local = sizeHint >= ZIP64_MAGIC;
+
+        writeLocalHeader(record);
+
+        CRC32 crc = new CRC32();
+        byte[] deflated = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            crc.update(buffer, 0, length);
+            deflater.setInput(buffer, 0, length);
+            while (!deflater.needsInput()) {
+                deflate(deflater, deflated);
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(deflater, deflated);
+        }
+
+        record.crc = crc.getValue();
+        record.size = deflater.getBytesRead();
+        record.compressedSize = deflater.getBytesWritten();
+
+        // like ZipOutputStream, use 8 bytes sizes only when they don't fit in 4 bytes,
+        // or when the local header has the Zip64 extra field (the reader expects them then)
+        writeInt(DATA_DESCRIPTOR_SIGNATURE);
+        writeInt(record.crc);
+        if (record.zip64Local || isZip64(record.size, record.compressedSize)) {
+            writeLong(record.compressedSize);
+            writeLong(record.size);
+        } else {
+            writeInt(record.compressedSize);
+            writeInt(record.size);
+        }
+    }
+
+    /**
+     * Writes the central directory and the end records. The underlying stream is flushed but not closed.
+     */
+    void finish() throws IOException {
+        long centralOffset = written;
+        for (Record record : records) {
+            writeCentralHeader(record);
+        }
+        long centralSize = written - centralOffset;
+
+        int count = records.size();
+        if ((count >= ZIP64_MAGIC_COUNT) || (centralOffset >= ZIP64_MAGIC) || (centralSize >= ZIP64_MAGIC)) {
+            long zip64EndOffset = written;
+
+            writeInt(ZIP64_END_SIGNATURE);
+            writeLong(44); // size of the remaining record
+            writeShort(VERSION_ZIP64); // version made by
+            writeShort(VERSION_ZIP64); // version needed to extract
+            writeInt(0); // number of this disk
+            writeInt(0); // disk with the start of the central directory
+            writeLong(count); // entries on this disk
+            writeLong(count); // total entries
+            writeLong(centralSize);
+            writeLong(centralOffset);
+
+            writeInt(ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0); // disk with the start of the zip64 end record
+            writeLong(zip64EndOffset);
+            writeInt(1); // total number of disks
+        }
+
+        writeInt(END_SIGNATURE);
+        writeShort(0); // number of this disk
+        writeShort(0); // disk with the start of the central directory
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT)); // entries on this disk
+        writeShort(Math.min(count, ZIP64_MAGIC_COUNT)); // total entries
+        writeInt(Math.min(centralSize, ZIP64_MAGIC));
+        writeInt(Math.min(centralOffset, ZIP64_MAGIC));
+        writeShort(0); // comment length
+
+        output.flush();
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     */
+    long getWritten() {
+        return written;
+    }
+
+    private void writeLocalHeader(Record record) throws IOException {
+        record.offset = written;
+        records.add(record);
+
+        boolean dataDescriptor = (record.flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(record.zip64Local ? VERSION_ZIP64 : VERSION);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(dosTime);
+        writeInt(dataDescriptor ? 0 : record.crc);
+        if (record.zip64Local) {
+            writeInt(ZIP64_MAGIC);
+            writeInt(ZIP64_MAGIC);
+        } else {
+            writeInt(dataDescriptor ? 0 : record.compressedSize);
+            writeInt(dataDescriptor ? 0 : record.size);
+        }
+        writeShort(record.name.length);
+        writeShort(record.zip64Local ? 20 : 0);
+        write(record.name, 0, record.name.length);
+
+        if (record.zip64Local) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(dataDescriptor ? 0 : record.size);
+            writeLong(dataDescriptor ? 0 : record.compressedSize);
+        }
+    }
+
+    private void writeCentralHeader(Record record) throws IOException {
+        boolean zip64Sizes = isZip64(record.size, record.compressedSize);
+        boolean zip64Offset = record.offset >= ZIP64_MAGIC;
+        int extraLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(VERSION_ZIP64); // version made by
+        writeShort((zip64 || record.zip64Local) ? VERSION_ZIP64 : VERSION);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(dosTime);
+        writeInt(record.crc);
+        writeInt(zip64Sizes ? ZIP64_MAGIC : record.compressedSize);
+        writeInt(zip64Sizes ? ZIP64_MAGIC : record.size);
+        writeShort(record.name.length);
+        writeShort(zip64 ? extraLength + 4 : 0);
+        writeShort(0); // comment length
+        writeShort(0); // disk number start
+        writeShort(0); // internal attributes
+        writeInt(0); // external attributes
+        writeInt(zip64Offset ? ZIP64_MAGIC : record.offset);
+        write(record.name, 0, record.name.length);
+
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(extraLength);
+            if (zip64Sizes) {
+                writeLong(record.size);
+                writeLong(record.compressedSize);
+            }
+            if (zip64Offset) {
+                writeLong(record.offset);
+            }
+        }
+    }
+
+    private void deflate(Deflater deflater, byte[] deflated) throws IOException {
+        int length = deflater.deflate(deflated);
+        if (length > 0) {
+            write(deflated, 0, length);
+        }
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        output.write(bytes, offset, length);
+        written += length;
+    }
+
+    private void writeShort(int value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        write(scratch, 0, 2);
+    }
+
+    private void writeInt(long value) throws IOException {
+        scratch[0] = (byte) value;
+        scratch[1] = (byte) (value >>> 8);
+        scratch[2] = (byte) (value >>> 16);
+        scratch[3] = (byte) (value >>> 24);
+        write(scratch, 0, 4);
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int i = 0; i < 8; i++) {
+            scratch[i] = (byte) (value >>> (8 * i));
+        }
+        write(scratch, 0, 8);
+    }
+
+    private static boolean isZip64(long size, long compressedSize) {
+        return (size >= ZIP64_MAGIC) || (compressedSize >= ZIP64_MAGIC);
+    }
+
+    private static int toDosTime(LocalDateTime time) {
+        return ((time.getYear() - 1980) << 25)
+            | (time.getMonthValue() << 21)
+            | (time.getDayOfMonth() << 16)
+            | (time.getHour() << 11)
+            | (time.getMinute() << 5)
+            | (time.getSecond() >> 1);
+    }
+
+    private static class Record {
+
+        final byte[] name;
+        final int method;
+        final int flags;
+
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        boolean zip64Local;
+
+        Record(String name, int method, int flags) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.method = method;
+            this.flags = flags | FLAG_UTF8;
+        }
+
+    }
+
+}
@@ -2,6 +2,8 @@ package ro.fortsoft.matilda.web;
 
 import ro.fortsoft.matilda.MatildaApplication;
 import ro.fortsoft.matilda.domain.Company;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.pippo.core.route.RouteGroup;
 import ro.pippo.core.route.Router;
 
@@ -20,10 +22,25 @@ class AdminCompanyRoutes extends RouteGroup {
         GET("/", routeContext -> {
             MatildaApplication application = routeContext.getApplication();
 
-            routeContext.setLocal("companies", application.getCompanyService().findAll());
+            PageRequest pageRequest = application.getPageRequest(routeContext, "name");
+            Page<Company> page = application.getCompanyService().findPage(pageRequest);
+            routeContext.setLocal("companies", page.getItems());
+            routeContext.setLocal("page", page);
+            routeContext.setLocal("pageRequest", pageRequest);
             routeContext.render("admin/companies");
         }).named("getCompanies");
 
+        // the company typeahead, the first companies that match the search
+        GET("/search", routeContext -> {
+            MatildaApplication application = routeContext.getApplication();
+
+            PageRequest pageRequest = new PageRequest()
+                .setSort("name")
+                .setSearch(routeContext.getParameter("search").toString())
+                .setSize(10);
+            routeContext.json().send(application.getCompanyService().findPage(pageRequest).getItems());
+        });
+
         GET("/{id}", routeContext -> {
             MatildaApplication application = routeContext.getApplication();
 
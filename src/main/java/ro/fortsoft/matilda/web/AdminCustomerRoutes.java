@@ -1,16 +1,15 @@
 package ro.fortsoft.matilda.web;
 
 import ro.fortsoft.matilda.MatildaApplication;
-import ro.fortsoft.matilda.domain.Company;
 import ro.fortsoft.matilda.domain.Customer;
 import ro.fortsoft.matilda.domain.CustomerDto;
+import ro.fortsoft.matilda.domain.Page;
+import ro.fortsoft.matilda.domain.PageRequest;
 import ro.pippo.core.route.RouteGroup;
 import ro.pippo.core.route.Router;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,12 +25,11 @@ class AdminCustomerRoutes extends RouteGroup {
 
 //            routeContext.setLocal("companyService", companyService); // bug in pebble
             // workaround bug
-            List<CustomerDto> customers = new ArrayList<>();
-            for (Customer customer : application.getCustomerService().findAll()) {
-                Company company = application.getCompanyService().findById(customer.getCompanyId());
-                customers.add(new CustomerDto(customer, company));
-            }
-            routeContext.setLocal("customers", customers);
+            PageRequest pageRequest = application.getPageRequest(routeContext, "lastName");
+            Page<CustomerDto> page = application.getCustomerService().findPageWithCompany(pageRequest);
+            routeContext.setLocal("customers", page.getItems());
+            routeContext.setLocal("page", page);
+            routeContext.setLocal("pageRequest", pageRequest);
             routeContext.render("admin/customers");
         }).named("getCustomers");
 
@@ -54,7 +52,10 @@ class AdminCustomerRoutes extends RouteGroup {
             Router router = application.getRouter();
             routeContext.setLocal("saveUrl", router.uriFor("postCustomer", parameters));
             routeContext.setLocal("backUrl", router.uriFor("getCustomers", new HashMap<>()));
-            routeContext.setLocal("companies", application.getCompanyService().findAll());
+            // for the company typeahead
+            if (customer.getCompanyId() != null) {
+                routeContext.setLocal("customerCompany", application.getCompanyService().findById(customer.getCompanyId()));
+            }
 
             routeContext.render("admin/customer");
         });
@@ -69,15 +70,6 @@ class AdminCustomerRoutes extends RouteGroup {
             application.getCustomerService().save(entity);
 
             routeContext.getResponse().header("X-IC-Transition", "none");
-//            routeContext.setLocal("customers", customerService.findAll());
-            // workaround bug
-            List<CustomerDto> customers = new ArrayList<>();
-            for (Customer customer : application.getCustomerService().findAll()) {
-                Company company = application.getCompanyService().findById(customer.getCompanyId());
-                customers.add(new CustomerDto(customer, company));
-            }
-            routeContext.setLocal("customers", customers);
-
             routeContext.redirect("getCustomers", new HashMap<>());
         }).named("postCustomer");
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.web;
+
+import ro.fortsoft.matilda.MatildaApplication;
+import ro.fortsoft.matilda.job.JobScheduler;
+import ro.pippo.core.route.RouteGroup;
+
+class AdminJobRoutes extends RouteGroup {
+
+    public AdminJobRoutes() {
+        super("/jobs");
+
+        GET("/", routeContext -> {
+            MatildaApplication application = routeContext.getApplication();
+            JobScheduler jobScheduler = application.getJobScheduler();
+
+            routeContext.setLocal("jobs", jobScheduler.getJobs());
+            routeContext.setLocal("pools", jobScheduler.getPoolStatistics());
+
+            routeContext.render("admin/jobs");
+        }).named("jobs");
+
+        // runs a job now, out of its schedule
+        POST("/{name}/run", routeContext -> {
+            MatildaApplication application = routeContext.getApplication();
+
+            String name = routeContext.getParameter("name").toString();
+            if (!application.getJobScheduler().runNow(name)) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            routeContext.redirect("/admin/jobs");
+        });
+    }
+
+}
@@ -18,12 +18,22 @@ package ro.fortsoft.matilda.web;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.matilda.MatildaApplication;
+import ro.fortsoft.matilda.domain.ArchiveExports;
+import ro.fortsoft.matilda.domain.Company;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.DocumentStatistics;
+import ro.fortsoft.matilda.domain.StorageUsage;
+import ro.fortsoft.matilda.domain.UploadResult;
+import ro.fortsoft.matilda.domain.UploadStatus;
 import ro.fortsoft.matilda.domain.User;
+import ro.fortsoft.matilda.util.DbUtils;
 import ro.fortsoft.matilda.util.NetUtils;
+import ro.fortsoft.matilda.util.UploadUtils;
 import ro.fortsoft.matilda.util.WhiteList;
 import ro.pippo.core.FileItem;
+import ro.pippo.core.HttpConstants;
 import ro.pippo.core.Messages;
+import ro.pippo.core.ParameterValue;
 import ro.pippo.core.PippoSettings;
 import ro.pippo.core.RedirectHandler;
 import ro.pippo.core.route.CSRFHandler;
@@ -32,9 +42,13 @@ import ro.pippo.core.route.RouteGroup;
 import ro.pippo.core.util.PathRegexBuilder;
 import ro.pippo.core.util.StringUtils;
 
-import java.io.File;
 import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Decebal Suiu
@@ -43,6 +57,10 @@ public class AdminRoutes extends RouteGroup {
 
     private static final Logger log = LoggerFactory.getLogger(AdminRoutes.class);
 
+    // the names used by CSRFHandler
+    private static final String CSRF_TOKEN = "_csrf_token";
+    private static final String CSRF_HEADER = "Csrf-Token";
+
     private final MatildaApplication application;
 
     public AdminRoutes(MatildaApplication application) {
@@ -60,8 +78,12 @@ public class AdminRoutes extends RouteGroup {
         addRouteGroup(new AdminCustomerRoutes());
         addRouteGroup(new AdminCompanyRoutes());
         addRouteGroup(new AdminUserRoutes());
+        addRouteGroup(new AdminJobRoutes());
         addUploadRoutes();
         addStorageRoutes();
+        addExportRoutes();
+        addDashboardRoutes();
+        addStatusRoutes();
     }
 
     private void addBeforeFilters() {
@@ -99,6 +121,21 @@ public class AdminRoutes extends RouteGroup {
          * This creates a session for all matching requests.
          */
         ALL(csrfAdminPaths(), new CSRFHandler()).named("CSRF handler");
+
+        // the CSRF handler validates only the POST requests, the token of a DELETE request comes in a header
+        DELETE(csrfAdminPaths(), routeContext -> {
+            String token = routeContext.getHeader(CSRF_HEADER);
+            if (StringUtils.isNullOrEmpty(token)) {
+                token = routeContext.getParameter(CSRF_TOKEN).toString();
+            }
+
+            if ((token == null) || !token.equals(routeContext.getSession(CSRF_TOKEN))) {
+                log.warn("Invalid CSRF token for {} '{}'", routeContext.getRequestMethod(), routeContext.getRequestUri());
+                routeContext.getResponse().forbidden().commit();
+            } else {
+                routeContext.next();
+            }
+        }).named("CSRF delete handler");
     }
 
     private void addSecurityRoutes() {
@@ -129,24 +166,19 @@ public class AdminRoutes extends RouteGroup {
 
     private void addUploadRoutes() {
         GET("/upload", routeContext -> {
-            Long companyId = application.getCompanyId(routeContext);
+            Company company = application.getCompany(routeContext);
+            Long companyId = (company != null) ? company.getId() : null;
             YearMonth date = application.getDate(routeContext);
 
             // for filter
-            routeContext.setLocal("companies", application.getCompanyService().findAll());
+            routeContext.setLocal(MatildaApplication.COMPANY, company);
             routeContext.setLocal(MatildaApplication.COMPANY_ID, companyId);
             routeContext.setLocal(MatildaApplication.DATE, date.format(MatildaApplication.DATE_TIME_FORMATTER));
 
             if (companyId == null) {
                 routeContext.getResponse().getFlash().error(getMessages().get("admin.company.required", routeContext));
             } else {
-                Document example = new Document()
-                    .setCompanyId(companyId)
-                    .setYear(date.getYear())
-                    .setMonth(date.getMonthValue())
-                    .setType(Document.OUT_TYPE);
-
-                List<Document> documents = application.getDocumentService().findByExample(example);
+                List<Document> documents = application.getDocumentService().findByCompanyAndPeriod(companyId, date, Document.OUT_TYPE);
 
                 routeContext.setLocal("documents", documents);
             }
@@ -166,28 +198,33 @@ public class AdminRoutes extends RouteGroup {
             // we must send a json http://plugins.krajee.com/file-input#ajax-uploads
             routeContext.json().send("{}");
         });
+
+        POST("/upload/batch", routeContext -> {
+            List<FileItem> files = UploadUtils.getFiles(routeContext.getRequest(), "files");
+            Long companyId = application.getCompanyId(routeContext);
+            YearMonth date = application.getDate(routeContext);
+
+            List<UploadResult> results = application.uploadFiles(files, companyId, date, Document.OUT_TYPE);
+
+            routeContext.json().send(UploadUtils.toResponse(results));
+        });
     }
 
     private void addStorageRoutes() {
         GET("/storage", routeContext -> {
-            Long companyId = application.getCompanyId(routeContext);
+            Company company = application.getCompany(routeContext);
+            Long companyId = (company != null) ? company.getId() : null;
             YearMonth date = application.getDate(routeContext);
 
             List<Document> documents = null;
             if (companyId != null) {
-                Document example = new Document()
-                    .setCompanyId(companyId)
-                    .setYear(date.getYear())
-                    .setMonth(date.getMonthValue())
-                    .setType(Document.IN_TYPE);
-
-                documents = application.getDocumentService().findByExample(example);
+                documents = application.getDocumentService().findByCompanyAndPeriod(companyId, date, Document.IN_TYPE);
             }
 
             routeContext.setLocal("documents", documents);
 
             // for filter
-            routeContext.setLocal("companies", application.getCompanyService().findAll());
+            routeContext.setLocal(MatildaApplication.COMPANY, company);
             routeContext.setLocal(MatildaApplication.COMPANY_ID, companyId);
             routeContext.setLocal(MatildaApplication.DATE, date.format(MatildaApplication.DATE_TIME_FORMATTER));
 
@@ -202,11 +239,234 @@ public class AdminRoutes extends RouteGroup {
             Long companyId = application.getCompanyId(routeContext);
             YearMonth date = application.getDate(routeContext);
 
-            File zip = application.createZip(companyId, date, Document.IN_TYPE);
-
-            // send the zip file
-            routeContext.getResponse().file(zip);
+            // stream the zip file
+            application.downloadZip(companyId, date, Document.IN_TYPE, routeContext.getResponse());
         }).named("adminDownload");
+
+        // one archive for many companies ("companies" is a list of ids or "all"), a folder for each company
+        GET("/bulk-download", routeContext -> {
+            List<Long> companyIds = getCompanyIds(routeContext.getParameter("companies"));
+            if ((companyIds != null) && companyIds.isEmpty()) {
+                routeContext.getResponse().badRequest().commit();
+                return;
+            }
+
+            YearMonth date = application.getDate(routeContext);
+
+            // stream the zip file
+            application.downloadBulkZip(companyIds, date, Document.IN_TYPE, routeContext.getResponse());
+        }).named("adminBulkDownload");
+
+        GET("/documents/{id}", routeContext -> {
+            Long id = getId(routeContext);
+
+            Document document = (id != null) ? application.getDocumentService().findById(id) : null;
+            if (document == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            application.downloadDocument(document, routeContext.getRequest(), routeContext.getResponse());
+        }).named("adminDocument");
+
+        DELETE("/documents/{id}", routeContext -> {
+            Long id = getId(routeContext);
+            if (id == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            Document document = application.getDocumentService().findById(id);
+            if (document != null) {
+                application.deleteDocument(document);
+            }
+
+            routeContext.getResponse().header("X-IC-Remove", "true").commit();
+        });
+    }
+
+    private void addExportRoutes() {
+        // starts the export of the archive in background, the client polls the export and downloads it when it's ready
+        POST("/exports", routeContext -> {
+            Long companyId = application.getCompanyId(routeContext);
+            if (companyId == null) {
+                routeContext.getResponse().badRequest().commit();
+                return;
+            }
+
+            YearMonth date = application.getDate(routeContext);
+            ArchiveExports.Export export = application.exportZip(companyId, date, Document.IN_TYPE);
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", export.getId());
+            routeContext.getResponse()
+                .header(HttpConstants.Header.LOCATION, routeContext.uriFor("export", parameters))
+                .status(HttpConstants.StatusCode.ACCEPTED);
+            routeContext.json().send(toJson(export, routeContext));
+        });
+
+        GET("/exports/{id}", routeContext -> {
+            ArchiveExports.Export export = application.getExport(routeContext.getParameter("id").toString());
+            if (export == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            routeContext.getResponse().header(HttpConstants.Header.CACHE_CONTROL, "no-store");
+            routeContext.json().send(toJson(export, routeContext));
+        }).named("export");
+
+        GET("/exports/{id}/download", routeContext -> {
+            ArchiveExports.Export export = application.getExport(routeContext.getParameter("id").toString());
+            if (export == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+            if (!export.isReady()) {
+                routeContext.getResponse().status(HttpConstants.StatusCode.CONFLICT).commit();
+                return;
+            }
+
+            application.downloadExport(export, routeContext.getResponse());
+        }).named("exportDownload");
+    }
+
+    private Map<String, Object> toJson(ArchiveExports.Export export, RouteContext routeContext) {
+        String status;
+        if (export.isReady()) {
+            status = "ready";
+        } else if (export.isFailed()) {
+            status = "failed";
+        } else {
+            status = (export.getEntries() > 0) ? "running" : "queued";
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", export.getId());
+        json.put("status", status);
+        json.put("progress", export.getProgress());
+        json.put("entries", export.getEntries());
+        json.put("totalEntries", export.getTotalEntries());
+        json.put("bytes", export.getBytes());
+        if (export.isReady()) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", export.getId());
+            json.put("size", export.getSize());
+            json.put("downloadUrl", routeContext.uriFor("exportDownload", parameters));
+        }
+        if (export.isFailed()) {
+            json.put("error", export.getError());
+        }
+
+        return json;
+    }
+
+    private void addDashboardRoutes() {
+        // the upload status of all the companies for a month, from one GROUP BY query
+        GET("/dashboard", routeContext -> {
+            YearMonth date = application.getDate(routeContext);
+
+            Map<Long, UploadStatus> statuses = new LinkedHashMap<>();
+            application.getCompanyService().findAll().stream()
+                .sorted(Comparator.comparing(Company::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)))
+                .forEach(company -> statuses.put(company.getId(), new UploadStatus(company)));
+            for (DocumentStatistics statistics : application.getDocumentService().findStatistics(null, date)) {
+                UploadStatus status = statuses.get(statistics.getCompanyId());
+                if (status != null) {
+                    status.add(statistics);
+                }
+            }
+
+            for (StorageUsage usage : application.getDocumentService().findStorageUsage()) {
+                UploadStatus status = statuses.get(usage.getCompanyId());
+                if (status != null) {
+                    status.setStoredSize(status.getStoredSize() + usage.getSize());
+                }
+            }
+
+            long uploaded = statuses.values().stream()
+                .filter(UploadStatus::isUploaded)
+                .count();
+
+            routeContext.setLocal("statuses", statuses.values());
+            routeContext.setLocal("uploaded", uploaded);
+            routeContext.setLocal(MatildaApplication.DATE, date.format(MatildaApplication.DATE_TIME_FORMATTER));
+
+            routeContext.render("admin/dashboard");
+        }).named("dashboard");
+
+        // the statistics of a company (or of all the companies with no "companyId") for a month
+        GET("/statistics", routeContext -> {
+            Long companyId = null;
+            if (!routeContext.getParameter(MatildaApplication.COMPANY_ID).isEmpty()) {
+                companyId = getLong(routeContext, MatildaApplication.COMPANY_ID);
+                if (companyId == null) {
+                    routeContext.getResponse().badRequest().commit();
+                    return;
+                }
+            }
+            YearMonth date = application.getDate(routeContext);
+
+            routeContext.json().send(application.getDocumentService().findStatistics(companyId, date));
+        });
+
+        // recomputes the storage usage from the documents, in background
+        POST("/dashboard/usage", routeContext -> {
+            application.getJobScheduler().runNow(MatildaApplication.STORAGE_USAGE_JOB);
+
+            routeContext.redirect("/admin/jobs");
+        });
+    }
+
+    private void addStatusRoutes() {
+        // the connection pool, to see the saturation and the wait times
+        GET("/status/pool", routeContext -> routeContext.json().send(DbUtils.getPoolStatistics()));
+    }
+
+    /**
+     * Returns the ids of a list parameter (repeated or comma separated), or null for "all".
+     */
+    private List<Long> getCompanyIds(ParameterValue parameter) {
+        List<Long> companyIds = new ArrayList<>();
+        if (parameter.isEmpty()) {
+            return companyIds;
+        }
+
+        for (String value : parameter.getValues()) {
+            for (String item : value.split(",")) {
+                item = item.trim();
+                if ("all".equals(item)) {
+                    return null;
+                }
+                if (!item.isEmpty()) {
+                    try {
+                        companyIds.add(Long.valueOf(item));
+                    } catch (NumberFormatException e) {
+                        log.debug("Invalid company id '{}'", item);
+                    }
+                }
+            }
+        }
+
+        return companyIds;
+    }
+
+    /**
+     * Returns the "id" path parameter or null if it's not a number.
+     */
+    private Long getId(RouteContext routeContext) {
+        return getLong(routeContext, "id");
+    }
+
+    /**
+     * Returns the parameter as a number or null if it's missing or it's not a number.
+     */
+    private Long getLong(RouteContext routeContext, String name) {
+        try {
+            return Long.valueOf(routeContext.getParameter(name).toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     private PippoSettings getPippoSettings() {
@@ -234,7 +494,12 @@ public class AdminRoutes extends RouteGroup {
         return new PathRegexBuilder()
             .includes(
                 "/admin/customer.*",
-                "/admin/company.*"
+                "/admin/company.*",
+                "/admin/storage",
+                "/admin/documents.*",
+                "/admin/exports.*",
+                "/admin/dashboard.*",
+                "/admin/jobs.*"
             )
             .build();
     }
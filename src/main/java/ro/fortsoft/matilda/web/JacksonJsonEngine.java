@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ro.pippo.core.Application;
+import ro.pippo.core.ContentTypeEngine;
+import ro.pippo.core.HttpConstants;
+import ro.pippo.core.PippoRuntimeException;
+
+import java.io.IOException;
+
+/**
+ * Renders the JSON responses with Jackson.
+ *
+ * @author Decebal Suiu
+ */
+public class JacksonJsonEngine implements ContentTypeEngine {
+
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void init(Application application) {
+        objectMapper = new ObjectMapper();
+    }
+
+    @Override
+    public String getContentType() {
+        return HttpConstants.ContentType.APPLICATION_JSON;
+    }
+
+    @Override
+    public String toString(Object object) {
+        try {
+            return objectMapper.writeValueAsString(object);
+        } catch (IOException e) {
+            throw new PippoRuntimeException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromString(String content, Class<T> classOfT) {
+        try {
+            return objectMapper.readValue(content, classOfT);
+        } catch (IOException e) {
+            throw new PippoRuntimeException(e);
+        }
+    }
+
+}
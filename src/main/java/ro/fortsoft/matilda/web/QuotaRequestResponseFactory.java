@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.web;
+
+import ro.fortsoft.matilda.MatildaApplication;
+import ro.fortsoft.matilda.domain.Customer;
+import ro.fortsoft.matilda.util.DbUtils;
+import ro.pippo.core.HttpConstants;
+import ro.pippo.core.RequestResponse;
+import ro.pippo.core.RequestResponseFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.Part;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+
+/**
+ * Rejects a multipart upload that doesn't fit in the storage quota before its body is read.
+ * The request of pippo reads the parameters when it's created and on a multipart request
+ * the servlet container parses (and spools) all the parts for that.
+ * So the declared Content-Length is checked here and, if it's too big, the request is marked
+ * with {@link #QUOTA_EXCEEDED} and its body is hidden from the parameters and the parts.
+ *
+ * @author Decebal Suiu
+ */
+public class QuotaRequestResponseFactory extends RequestResponseFactory {
+
+    public static final String QUOTA_EXCEEDED = "_quotaExceeded";
+
+    private static final String UPLOAD_PATH = "(/admin)?/upload(/batch)?";
+
+    private final MatildaApplication application;
+
+    public QuotaRequestResponseFactory(MatildaApplication application) {
+        super(application);
+
+        this.application = application;
+    }
+
+    @Override
+    public RequestResponse createRequestResponse(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) {
+        if (isQuotaExceeded(httpServletRequest)) {
+            httpServletRequest.setAttribute(QUOTA_EXCEEDED, Boolean.TRUE);
+            httpServletRequest = new BodylessRequest(httpServletRequest);
+        }
+
+        return super.createRequestResponse(httpServletRequest, httpServletResponse);
+    }
+
+    private boolean isQuotaExceeded(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (!HttpConstants.Method.POST.equals(request.getMethod())
+            || (contentType == null)
+            || !contentType.startsWith(HttpConstants.ContentType.MULTIPART_FORM_DATA)) {
+            return false;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.matches(UPLOAD_PATH)) {
+            return false;
+        }
+
+        // a chunked request has no length, its files are checked one by one after they are read
+        long length = request.getContentLengthLong();
+        Long companyId = getCompanyId(request);
+        if ((length < 0) || (companyId == null)) {
+            return false;
+        }
+
+        return !DbUtils.withDb(db -> application.hasStorageQuota(companyId, length));
+    }
+
+    private Long getCompanyId(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+
+        Customer customer = (Customer) session.getAttribute(MatildaApplication.CUSTOMER);
+        if (customer != null) {
+            return customer.getCompanyId();
+        }
+
+        // the admin uploads for the company selected in the session
+        return (Long) session.getAttribute(MatildaApplication.COMPANY_ID);
+    }
+
+    /**
+     * A request whose body is never read, it has no parameters and no parts.
+     */
+    private static class BodylessRequest extends HttpServletRequestWrapper {
+
+        BodylessRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getParameter(String name) {
+            return null;
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return null;
+        }
+
+        @Override
+        public Collection<Part> getParts() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Part getPart(String name) {
+            return null;
+        }
+
+    }
+
+}
@@ -20,20 +20,31 @@ import org.slf4j.LoggerFactory;
 import ro.fortsoft.matilda.MatildaApplication;
 import ro.fortsoft.matilda.domain.Customer;
 import ro.fortsoft.matilda.domain.Document;
+import ro.fortsoft.matilda.domain.UploadResult;
+import ro.fortsoft.matilda.domain.ResumableUploads;
+import ro.fortsoft.matilda.util.FileUtils;
 import ro.fortsoft.matilda.util.NetUtils;
+import ro.fortsoft.matilda.util.UploadUtils;
 import ro.fortsoft.matilda.util.RecaptchaUtils;
 import ro.pippo.core.FileItem;
+import ro.pippo.core.HttpConstants;
 import ro.pippo.core.Messages;
+import ro.pippo.core.PippoRuntimeException;
 import ro.pippo.core.PippoSettings;
 import ro.pippo.core.Request;
+import ro.pippo.core.route.RouteContext;
 import ro.pippo.core.route.RouteGroup;
 import ro.pippo.core.util.StringUtils;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.YearMonth;
+import java.util.Base64;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -43,6 +54,17 @@ public class Routes extends RouteGroup {
 
     private static final Logger log = LoggerFactory.getLogger(Routes.class);
 
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_METADATA = "Upload-Metadata";
+    private static final int NO_CONTENT = 204;
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final String OFFSET_CONTENT_TYPE = "application/offset+octet-stream";
+    private static final long DEFAULT_UPLOAD_MAX_LENGTH = 1024; // megabytes
+
     private final MatildaApplication application;
     private Map<String, Integer> failedLoginByHost = new ConcurrentHashMap<>();
 
@@ -54,6 +76,7 @@ public class Routes extends RouteGroup {
         // ROUTES
         addSecurityRoutes();
         addUploadRoutes();
+        addResumableUploadRoutes();
         addStorageRoutes();
     }
 
@@ -123,13 +146,8 @@ public class Routes extends RouteGroup {
 //            YearMonth date = getDate(routeContext);
             YearMonth date = YearMonth.now().minusMonths(1);
 
-            Document example = new Document()
-                .setCompanyId(application.getCompany(routeContext).getId())
-                .setYear(date.getYear())
-                .setMonth(date.getMonthValue())
-                .setType(Document.IN_TYPE);
-
-            List<Document> documents = application.getDocumentService().findByExample(example);
+            long companyId = application.getCompany(routeContext).getId();
+            List<Document> documents = application.getDocumentService().findByCompanyAndPeriod(companyId, date, Document.IN_TYPE);
 
             routeContext.setLocal("documents", documents);
             routeContext.setLocal(MatildaApplication.DATE, date.format(MatildaApplication.DATE_TIME_FORMATTER));
@@ -150,6 +168,126 @@ public class Routes extends RouteGroup {
             // we must send a json http://plugins.krajee.com/file-input#ajax-uploads
             routeContext.json().send("{}");
         });
+
+        POST("/upload/batch", routeContext -> {
+            List<FileItem> files = UploadUtils.getFiles(routeContext.getRequest(), "files");
+            long companyId = application.getCustomer(routeContext).getCompanyId();
+            YearMonth date = application.getDate(routeContext);
+
+            List<UploadResult> results = application.uploadFiles(files, companyId, date, Document.IN_TYPE);
+
+            routeContext.json().send(UploadUtils.toResponse(results));
+        });
+    }
+
+    /**
+     * Resumable uploads, a subset of the tus protocol (https://tus.io/protocols/resumable-upload.html).
+     * POST creates the upload, HEAD returns the offset and PATCH appends a chunk at the offset.
+     * The upload is committed (like a multipart upload) when its last byte arrives.
+     */
+    private void addResumableUploadRoutes() {
+        POST("/uploads", routeContext -> {
+            Request request = routeContext.getRequest();
+            long length = toLong(request.getHeader(UPLOAD_LENGTH));
+            String name = FileUtils.getSafeName(getFileName(request.getHeader(UPLOAD_METADATA)));
+            if ((length <= 0) || (name == null)) {
+                routeContext.getResponse().badRequest().commit();
+                return;
+            }
+
+            long companyId = application.getCustomer(routeContext).getCompanyId();
+            YearMonth date = application.getDate(routeContext);
+
+            // the upload is rejected before its first chunk, the maximum length applies also without a quota
+            long maxLength = getPippoSettings().getLong("upload.maxLength", DEFAULT_UPLOAD_MAX_LENGTH) * 1024 * 1024;
+            if ((length > maxLength) || !application.hasStorageQuota(companyId, length)) {
+                routeContext.getResponse().status(REQUEST_ENTITY_TOO_LARGE).commit();
+                return;
+            }
+
+            ResumableUploads.Upload upload;
+            try {
+                upload = application.getResumableUploads().create(companyId, date, Document.IN_TYPE, name, length);
+            } catch (IOException e) {
+                throw new PippoRuntimeException(e);
+            }
+
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("id", upload.getId());
+            routeContext.getResponse()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(HttpConstants.Header.LOCATION, routeContext.uriFor("resumableUpload", parameters))
+                .created()
+                .commit();
+        });
+
+        HEAD("/uploads/{id}", routeContext -> {
+            ResumableUploads.Upload upload = getUpload(routeContext);
+            if (upload == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            routeContext.getResponse()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(application.getResumableUploads().getOffset(upload)))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getLength()))
+                .header(HttpConstants.Header.CACHE_CONTROL, "no-store")
+                .commit();
+        }).named("resumableUpload");
+
+        PATCH("/uploads/{id}", routeContext -> {
+            String contentType = routeContext.getHeader(HttpConstants.Header.CONTENT_TYPE);
+            if ((contentType == null) || !contentType.split(";")[0].trim().equalsIgnoreCase(OFFSET_CONTENT_TYPE)) {
+                routeContext.getResponse().status(UNSUPPORTED_MEDIA_TYPE).commit();
+                return;
+            }
+
+            ResumableUploads.Upload upload = getUpload(routeContext);
+            if (upload == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            long offset = toLong(routeContext.getRequest().getHeader(UPLOAD_OFFSET));
+            if (offset < 0) {
+                routeContext.getResponse().badRequest().commit();
+                return;
+            }
+
+            long newOffset;
+            try {
+                newOffset = application.getResumableUploads().append(upload, offset, routeContext.getRequest().getHttpServletRequest().getInputStream());
+            } catch (IllegalStateException e) {
+                // the client must ask (HEAD) for the offset
+                log.debug(e.getMessage());
+                routeContext.getResponse().conflict().commit();
+                return;
+            } catch (IOException e) {
+                throw new PippoRuntimeException(e);
+            }
+
+            if (newOffset >= upload.getLength()) {
+                application.completeUpload(upload);
+            }
+
+            routeContext.getResponse()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(newOffset))
+                .status(NO_CONTENT)
+                .commit();
+        });
+
+        DELETE("/uploads/{id}", routeContext -> {
+            ResumableUploads.Upload upload = getUpload(routeContext);
+            if (upload == null) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            application.getResumableUploads().remove(upload);
+            routeContext.getResponse().header(TUS_RESUMABLE, TUS_VERSION).status(NO_CONTENT).commit();
+        });
     }
 
     private void addStorageRoutes() {
@@ -157,13 +295,7 @@ public class Routes extends RouteGroup {
             long companyId = application.getCustomer(routeContext).getCompanyId();
             YearMonth date = application.getDate(routeContext);
 
-            Document example = new Document()
-                .setCompanyId(companyId)
-                .setYear(date.getYear())
-                .setMonth(date.getMonthValue())
-                .setType(Document.OUT_TYPE);
-
-            List<Document> documents = application.getDocumentService().findByExample(example);
+            List<Document> documents = application.getDocumentService().findByCompanyAndPeriod(companyId, date, Document.OUT_TYPE);
 
             routeContext.setLocal("documents", documents);
             routeContext.setLocal("date", date.format(MatildaApplication.DATE_TIME_FORMATTER));
@@ -175,11 +307,34 @@ public class Routes extends RouteGroup {
             long companyId = application.getCustomer(routeContext).getCompanyId();
             YearMonth date = application.getDate(routeContext);
 
-            File zip = application.createZip(companyId, date, Document.OUT_TYPE);
-
-            // send the zip file
-            routeContext.getResponse().file(zip);
+            // stream the zip file
+            application.downloadZip(companyId, date, Document.OUT_TYPE, routeContext.getResponse());
         }).named("download");
+
+        GET("/documents/{id}", routeContext -> {
+            Long id = getId(routeContext);
+            long companyId = application.getCustomer(routeContext).getCompanyId();
+
+            // a customer sees only the documents of his company
+            Document document = (id != null) ? application.getDocumentService().findById(id) : null;
+            if ((document == null) || !Objects.equals(document.getCompanyId(), companyId)) {
+                routeContext.getResponse().notFound().commit();
+                return;
+            }
+
+            application.downloadDocument(document, routeContext.getRequest(), routeContext.getResponse());
+        }).named("document");
+    }
+
+    /**
+     * Returns the "id" path parameter or null if it's not a number.
+     */
+    private Long getId(RouteContext routeContext) {
+        try {
+            return Long.valueOf(routeContext.getParameter("id").toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     private PippoSettings getPippoSettings() {
@@ -190,6 +345,46 @@ public class Routes extends RouteGroup {
         return application.getMessages();
     }
 
+    private ResumableUploads.Upload getUpload(RouteContext routeContext) {
+        String id = routeContext.getParameter("id").toString();
+        ResumableUploads.Upload upload = application.getResumableUploads().get(id);
+
+        // a customer sees only the uploads of his company
+        long companyId = application.getCustomer(routeContext).getCompanyId();
+
+        return ((upload != null) && (upload.getCompanyId() == companyId)) ? upload : null;
+    }
+
+    /**
+     * Returns the "filename" value from the Upload-Metadata header ("key base64Value,...").
+     */
+    private String getFileName(String metadata) {
+        if (StringUtils.isNullOrEmpty(metadata)) {
+            return null;
+        }
+
+        for (String pair : metadata.split(",")) {
+            String[] tokens = pair.trim().split(" ");
+            if ((tokens.length == 2) && "filename".equals(tokens[0])) {
+                try {
+                    return new String(Base64.getDecoder().decode(tokens[1]), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private long toLong(String value) {
+        try {
+            return (value != null) ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private Customer authenticateCustomer(String email, String password) {
         if (StringUtils.isNullOrEmpty(email) || StringUtils.isNullOrEmpty(password)) {
             return null;
@@ -0,0 +1,53 @@
+/*
+ * The sortable lists and the company typeahead of the admin pages.
+ */
+$(function() {
+    // sort a list on the server, a second click on the same column reverses the order
+    $(".sort-link").click(function(event) {
+        event.preventDefault();
+
+        var form = $("#list-form");
+        var sort = $(this).data("sort");
+        var sortInput = form.find("[name=sort]");
+        var orderInput = form.find("[name=order]");
+        var order = (sortInput.val() == sort && orderInput.val() != "desc") ? "desc" : "asc";
+        sortInput.val(sort);
+        orderInput.val(order);
+        form.submit();
+    });
+
+    // the options are the first companies that match the text, the hidden input gets the id of the chosen company
+    $(".company-typeahead").each(function() {
+        var input = $(this);
+        var target = $(input.data("target"));
+        var options = $("#" + input.attr("list"));
+        var timer;
+
+        function label(company) {
+            return company.name + " (" + company.fiscalCode + ")";
+        }
+
+        function select() {
+            var option = options.find("option").filter(function() {
+                return this.value == input.val();
+            });
+            target.val(option.length ? option.data("id") : "");
+            this.setCustomValidity((input.val() && !target.val()) ? input.data("error") : "");
+        }
+
+        input.on("input", function() {
+            select.call(this);
+
+            clearTimeout(timer);
+            timer = setTimeout(function() {
+                $.getJSON(input.data("url"), { search: input.val() }, function(companies) {
+                    options.empty();
+                    $.each(companies, function(index, company) {
+                        options.append($("<option>").attr("value", label(company)).data("id", company.id));
+                    });
+                    select.call(input[0]);
+                });
+            }, 200);
+        });
+    });
+});
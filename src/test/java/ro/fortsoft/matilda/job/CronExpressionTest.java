@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.job;
+
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CronExpressionTest {
+
+    @Test
+    public void testEveryMinute() {
+        assertNext("* * * * *", "2026-10-16T10:03:30", "2026-10-16T10:04");
+    }
+
+    @Test
+    public void testNextIsAfterTheGivenTime() {
+        assertNext("0 3 * * *", "2026-10-16T02:59", "2026-10-16T03:00");
+        assertNext("0 3 * * *", "2026-10-16T03:00", "2026-10-17T03:00");
+    }
+
+    @Test
+    public void testStep() {
+        assertNext("*/15 * * * *", "2026-10-16T10:03", "2026-10-16T10:15");
+        assertNext("*/15 * * * *", "2026-10-16T10:45", "2026-10-16T11:00");
+        // from 5 to the end, every 20
+        assertNext("5/20 * * * *", "2026-10-16T10:26", "2026-10-16T10:45");
+        assertNext("5/20 * * * *", "2026-10-16T10:45", "2026-10-16T11:05");
+    }
+
+    @Test
+    public void testRangeWithStep() {
+        assertNext("0 9-17/4 * * *", "2026-10-16T09:00", "2026-10-16T13:00");
+        assertNext("0 9-17/4 * * *", "2026-10-16T13:00", "2026-10-16T17:00");
+        assertNext("0 9-17/4 * * *", "2026-10-16T17:00", "2026-10-17T09:00");
+    }
+
+    @Test
+    public void testList() {
+        assertNext("0,30 8,20 * * *", "2026-10-16T08:00", "2026-10-16T08:30");
+        assertNext("0,30 8,20 * * *", "2026-10-16T08:30", "2026-10-16T20:00");
+    }
+
+    @Test
+    public void testDayOfWeekRange() {
+        // 2026-10-16 is a Friday
+        assertNext("30 8 * * 1-5", "2026-10-16T09:00", "2026-10-19T08:30");
+    }
+
+    @Test
+    public void testSundayIsZeroOrSeven() {
+        assertNext("0 0 * * 0", "2026-10-16T00:00", "2026-10-18T00:00");
+        assertNext("0 0 * * 7", "2026-10-16T00:00", "2026-10-18T00:00");
+        assertNext("0 0 * * 6-7", "2026-10-17T00:00", "2026-10-18T00:00");
+    }
+
+    @Test
+    public void testDayOfMonthOrDayOfWeek() {
+        // the 13th or a Friday, 2026-10-01 is a Thursday
+        assertNext("0 0 13 * 5", "2026-10-01T00:00", "2026-10-02T00:00");
+        assertNext("0 0 13 * 5", "2026-10-09T00:00", "2026-10-13T00:00");
+    }
+
+    @Test
+    public void testStarWithStepIsNotRestricted() {
+        // the 1st and a Sunday, Tuesday, Thursday or Saturday (2026-02-01 is a Sunday)
+        assertNext("0 0 1 * */2", "2026-01-15T00:00", "2026-02-01T00:00");
+        // a Monday that is the 1st, 11th, 21st or 31st (2026-08-31 is a Monday)
+        assertNext("0 0 */10 * 1", "2026-07-01T00:00", "2026-08-31T00:00");
+    }
+
+    @Test
+    public void testMonthRollover() {
+        assertNext("0 0 31 * *", "2026-01-31T00:00", "2026-03-31T00:00");
+        assertNext("0 0 1 1 *", "2026-12-31T23:59", "2027-01-01T00:00");
+        assertNext("59 23 * * *", "2026-12-31T23:58", "2026-12-31T23:59");
+    }
+
+    @Test
+    public void testLeapDay() {
+        assertNext("0 0 29 2 *", "2026-03-01T00:00", "2028-02-29T00:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeverMatches() {
+        new CronExpression("0 0 30 2 *").next(time("2026-01-01T00:00"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfFields() {
+        new CronExpression("0 0 * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValueOutOfRange() {
+        new CronExpression("60 0 * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        new CronExpression("0 10-5 * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValue() {
+        new CronExpression("0 0 * JAN *");
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("*/5 * * * *", new CronExpression("*/5 * * * *").toString());
+    }
+
+    private static void assertNext(String expression, String after, String expected) {
+        assertEquals(expression + " after " + after, time(expected), new CronExpression(expression).next(time(after)));
+    }
+
+    private static ZonedDateTime time(String time) {
+        return ZonedDateTime.parse(time + "Z").withZoneSameInstant(ZoneOffset.UTC);
+    }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ro.fortsoft.matilda.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Decebal Suiu
+ */
+public class ZipArchiverTest {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private ZipArchiver archiver;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        archiver = new ZipArchiver(2, 6);
+        file = File.createTempFile("archive", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        archiver.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void testSmallCompressedEntryIsStored() throws IOException {
+        byte[] data = randomBytes(1000);
+        TestEntry entry = new TestEntry("invoice.pdf", "application/pdf", data);
+        byte[] zip = zip(entry);
+
+        Map<String, ZipEntry> entries = readZipFile(zip, "invoice.pdf", data);
+        assertEquals(ZipEntry.STORED, entries.get("invoice.pdf").getMethod());
+        assertEquals(data.length, entries.get("invoice.pdf").getCompressedSize());
+        assertArrayEquals(data, readZipStream(zip).get("invoice.pdf"));
+        assertEquals(1, entry.opens);
+    }
+
+    @Test
+    public void testSmallEntryIsDeflated() throws IOException {
+        byte[] data = repeat("hello matilda ", 1000);
+        TestEntry entry = new TestEntry("notes.txt", "text/plain", data);
+        byte[] zip = zip(entry);
+
+        Map<String, ZipEntry> entries = readZipFile(zip, "notes.txt", data);
+        assertEquals(ZipEntry.DEFLATED, entries.get("notes.txt").getMethod());
+        assertTrue(entries.get("notes.txt").getCompressedSize() < data.length);
+        assertArrayEquals(data, readZipStream(zip).get("notes.txt"));
+        assertEquals(1, entry.opens);
+    }
+
+    @Test
+    public void testLargeCompressedEntryIsDeflatedWithLevelZero() throws IOException {
+        byte[] data = randomBytes(6 * 1024 * 1024);
+        TestEntry entry = new TestEntry("scan.pdf", "application/pdf", data);
+        byte[] zip = zip(entry);
+
+        Map<String, ZipEntry> entries = readZipFile(zip, "scan.pdf", data);
+        ZipEntry zipEntry = entries.get("scan.pdf");
+        assertEquals(ZipEntry.DEFLATED, zipEntry.getMethod());
+        // level 0 adds only the framing of the stored blocks
+        assertTrue(zipEntry.getCompressedSize() >= data.length);
+        assertTrue(zipEntry.getCompressedSize() < data.length + 1024);
+        assertArrayEquals(data, readZipStream(zip).get("scan.pdf"));
+        assertEquals(1, entry.opens);
+    }
+
+    @Test
+    public void testEntryWithUnknownSizeIsStreamed() throws IOException {
+        byte[] data = repeat("unknown size ", 100);
+        TestEntry entry = new TestEntry("unknown.txt", "text/plain", data, -1);
+        byte[] zip = zip(entry);
+
+        readZipFile(zip, "unknown.txt", data);
+        assertArrayEquals(data, readZipStream(zip).get("unknown.txt"));
+        assertEquals(1, entry.opens);
+    }
+
+    @Test
+    public void testDuplicateNamesAreRenamed() throws IOException {
+        byte[] first = "first".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+        byte[] third = "third".getBytes(StandardCharsets.UTF_8);
+        byte[] zip = zip(
+            new TestEntry("invoice.pdf", "application/pdf", first),
+            new TestEntry("invoice.pdf", "application/pdf", second),
+            new TestEntry("invoice.pdf", "application/pdf", third));
+
+        Map<String, byte[]> entries = readZipStream(zip);
+        assertEquals(Arrays.asList("invoice.pdf", "invoice (1).pdf", "invoice (2).pdf"), new ArrayList<>(entries.keySet()));
+        assertArrayEquals(first, entries.get("invoice.pdf"));
+        assertArrayEquals(second, entries.get("invoice (1).pdf"));
+        assertArrayEquals(third, entries.get("invoice (2).pdf"));
+        readZipFile(zip, "invoice (2).pdf", third);
+    }
+
+    @Test
+    public void testEntriesAreWrittenInOrder() throws IOException {
+        List<TestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(new TestEntry("file" + i + ".txt", "text/plain", repeat("entry " + i + " ", 100 * i)));
+        }
+        byte[] zip = zip(entries.toArray(new TestEntry[0]));
+
+        Map<String, byte[]> read = readZipStream(zip);
+        assertEquals(20, read.size());
+        int i = 0;
+        for (Map.Entry<String, byte[]> entry : read.entrySet()) {
+            assertEquals(entries.get(i).name, entry.getKey());
+            assertArrayEquals(entries.get(i).data, entry.getValue());
+            i++;
+        }
+    }
+
+    @Test
+    public void testNonAsciiNameIsUtf8() throws IOException {
+        byte[] data = "ă".getBytes(StandardCharsets.UTF_8);
+        byte[] zip = zip(new TestEntry("factură.txt", "text/plain", data));
+
+        readZipFile(zip, "factură.txt", data);
+        assertArrayEquals(data, readZipStream(zip).get("factură.txt"));
+    }
+
+    /**
+     * An entry announced bigger than 4 GB gets the Zip64 extra field in its local header
+     * and then its data descriptor has 8 bytes sizes (see APPNOTE 4.3.9.2).
+     * {@link ZipInputStream} (before Java 21) guesses the size of the descriptor from the data,
+     * so the archive is read back with {@link ZipFile} and the records are checked byte by byte.
+     */
+    @Test
+    public void testZip64LocalHeaderAndDataDescriptor() throws IOException {
+        byte[] data = repeat("zip64 ", 100);
+        byte[] zip = zip(new TestEntry("big.txt", "text/plain", data, 5L * 1024 * 1024 * 1024));
+
+        readZipFile(zip, "big.txt", data);
+
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(0x04034b50, buffer.getInt(0));
+        assertEquals(45, buffer.getShort(4)); // version needed to extract
+        int flags = buffer.getShort(6);
+        assertEquals(1 << 3, flags & (1 << 3)); // data descriptor
+        assertEquals(ZIP64_MAGIC, buffer.getInt(18) & ZIP64_MAGIC);
+        assertEquals(ZIP64_MAGIC, buffer.getInt(22) & ZIP64_MAGIC);
+        int nameLength = buffer.getShort(26);
+        int extraLength = buffer.getShort(28);
+        assertEquals(20, extraLength);
+        int extraOffset = 30 + nameLength;
+        assertEquals(0x0001, buffer.getShort(extraOffset));
+        assertEquals(16, buffer.getShort(extraOffset + 2));
+
+        // the descriptor is right before the central directory
+        int centralOffset = indexOf(zip, 0x02014b50);
+        int descriptorOffset = centralOffset - 24;
+        assertEquals(0x08074b50, buffer.getInt(descriptorOffset));
+        assertEquals(crc(data), buffer.getInt(descriptorOffset + 4) & ZIP64_MAGIC);
+        long compressedSize = buffer.getLong(descriptorOffset + 8);
+        assertEquals(data.length, buffer.getLong(descriptorOffset + 16));
+        assertEquals(descriptorOffset - (extraOffset + extraLength), compressedSize);
+    }
+
+    /**
+     * More entries than the classic end record can count need the Zip64 end records.
+     */
+    @Test
+    public void testZip64EndRecords() throws IOException {
+        int count = 0xFFFF + 10;
+        List<TestEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new TestEntry(i + ".txt", "text/plain", new byte[] { (byte) i }));
+        }
+        byte[] zip = zip(entries.toArray(new TestEntry[0]));
+
+        assertTrue(indexOf(zip, 0x06064b50) > 0);
+        assertTrue(indexOf(zip, 0x07064b50) > 0);
+
+        write(zip);
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertEquals(count, zipFile.size());
+            ZipEntry last = zipFile.getEntry((count - 1) + ".txt");
+            assertArrayEquals(new byte[] { (byte) (count - 1) }, readAll(zipFile.getInputStream(last)));
+        }
+        assertEquals(count, readZipStream(zip).size());
+    }
+
+    @Test
+    public void testSmallBufferBudget() throws IOException {
+        archiver.shutdown();
+        // no entry fits in the budget, all are compressed while they are written
+        archiver = new ZipArchiver(2, 6, 10);
+
+        byte[] pdf = randomBytes(1000);
+        byte[] text = repeat("budget ", 1000);
+        TestEntry pdfEntry = new TestEntry("small.pdf", "application/pdf", pdf);
+        TestEntry textEntry = new TestEntry("small.txt", "text/plain", text);
+        byte[] zip = zip(pdfEntry, textEntry);
+
+        Map<String, byte[]> entries = readZipStream(zip);
+        assertArrayEquals(pdf, entries.get("small.pdf"));
+        assertArrayEquals(text, entries.get("small.txt"));
+        readZipFile(zip, "small.txt", text);
+        assertEquals(1, pdfEntry.opens);
+        assertEquals(1, textEntry.opens);
+    }
+
+    private byte[] zip(TestEntry... entries) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        archiver.zip(Arrays.asList(entries).iterator(), output);
+
+        return output.toByteArray();
+    }
+
+    private Map<String, ZipEntry> readZipFile(byte[] zip, String name, byte[] data) throws IOException {
+        write(zip);
+
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(file)) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                entries.put(entry.getName(), entry);
+            }
+            ZipEntry entry = zipFile.getEntry(name);
+            assertEquals(data.length, entry.getSize());
+            assertEquals(crc(data), entry.getCrc());
+            assertArrayEquals(data, readAll(zipFile.getInputStream(entry)));
+        }
+
+        return entries;
+    }
+
+    private Map<String, byte[]> readZipStream(byte[] zip) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                entries.put(entry.getName(), readAll(input));
+            }
+        }
+
+        return entries;
+    }
+
+    private void write(byte[] zip) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(zip);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static int indexOf(byte[] zip, int signature) {
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i <= zip.length - 4; i++) {
+            if (buffer.getInt(i) == signature) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        return crc.getValue();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private static byte[] repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class TestEntry implements ZipArchiver.Entry {
+
+        final String name;
+        final String contentType;
+        final byte[] data;
+        final long size;
+
+        int opens;
+
+        TestEntry(String name, String contentType, byte[] data) {
+            this(name, contentType, data, data.length);
+        }
+
+        TestEntry(String name, String contentType, byte[] data, long size) {
+            this.name = name;
+            this.contentType = contentType;
+            this.data = data;
+            this.size = size;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public synchronized InputStream getStream() {
+            opens++;
+
+            return new ByteArrayInputStream(data);
+        }
+
+    }
+
+}